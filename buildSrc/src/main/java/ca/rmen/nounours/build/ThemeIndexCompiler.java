@@ -0,0 +1,188 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.build;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a themes/&lt;id&gt;/ asset folder into a single binary theme.idx file.
+ * The format is documented in ca.rmen.nounours.android.common.nounours.theme.ThemeIndex,
+ * and must be kept in sync with it.
+ * <p/>
+ * Used by gradle/theme-index.gradle at build time, and by the unit tests of the common module.
+ */
+public final class ThemeIndexCompiler {
+
+    public static final int MAGIC = 0x4e544931; // "NTI1"
+    public static final int VERSION = 2;
+
+    private final List<String> mStrings = new ArrayList<>();
+    private final Map<String, Integer> mStringIndexes = new HashMap<>();
+    private final Map<String, Integer> mImageIndexes = new HashMap<>();
+    private final Map<String, Integer> mFeatureIndexes = new HashMap<>();
+
+    private ThemeIndexCompiler() {
+    }
+
+    public static void compile(File themeDir, File outFile) throws IOException {
+        new ThemeIndexCompiler().compileThemeDir(themeDir, outFile);
+    }
+
+    private void compileThemeDir(File themeDir, File outFile) throws IOException {
+        List<Map<String, String>> images = readCsv(new File(themeDir, "image.csv"));
+        for (int i = 0; i < images.size(); i++) mImageIndexes.put(images.get(i).get("Id"), i);
+        List<Map<String, String>> features = readCsv(new File(themeDir, "feature.csv"));
+        for (int i = 0; i < features.size(); i++) mFeatureIndexes.put(features.get(i).get("Id"), i);
+
+        // Rows referring to unknown images or features are dropped.
+        List<Map<String, String>> imageFeatures = new ArrayList<>();
+        for (Map<String, String> row : readCsv(new File(themeDir, "imagefeatureassoc.csv"))) {
+            if (getImageIndex(row.get("ImageId")) >= 0 && getFeatureIndex(row.get("FeatureId")) >= 0) imageFeatures.add(row);
+        }
+        List<Map<String, String>> adjacentImages = new ArrayList<>();
+        for (Map<String, String> row : readCsv(new File(themeDir, "adjacentimage.csv"))) {
+            if (getImageIndex(row.get("ImageId")) >= 0
+                    && getFeatureIndex(row.get("FeatureId")) >= 0
+                    && getImageIndex(row.get("AdjacentImageId")) >= 0) adjacentImages.add(row);
+        }
+        List<Map<String, String>> orientationImages = new ArrayList<>();
+        for (Map<String, String> row : readCsv(new File(themeDir, "orientationimage2.csv"))) {
+            if (getImageIndex(row.get("ImageId")) >= 0) orientationImages.add(row);
+        }
+
+        // Intern all the strings first: the string pool is written before the tables.
+        for (Map<String, String> image : images) intern(image.get("Id"));
+        for (Map<String, String> feature : features) intern(feature.get("Id"));
+
+        // Sorted by image, so the reader can find one contiguous slice per image.
+        // The sort is stable: the features of an image stay in file order.
+        List<Map<String, String>> sortedImageFeatures = new ArrayList<>();
+        for (int image = 0; image < images.size(); image++) {
+            for (Map<String, String> row : imageFeatures) {
+                if (getImageIndex(row.get("ImageId")) == image) sortedImageFeatures.add(row);
+            }
+        }
+
+        File outDir = outFile.getParentFile();
+        if (outDir != null && !outDir.isDirectory() && !outDir.mkdirs()) throw new IOException("Couldn't create " + outDir);
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(outFile));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(mStrings.size());
+            for (String string : mStrings) out.writeUTF(string);
+
+            out.writeInt(images.size());
+            for (Map<String, String> image : images) out.writeInt(intern(image.get("Id")));
+
+            out.writeInt(features.size());
+            for (Map<String, String> feature : features) out.writeInt(intern(feature.get("Id")));
+
+            out.writeInt(sortedImageFeatures.size());
+            for (Map<String, String> row : sortedImageFeatures) {
+                out.writeInt(getImageIndex(row.get("ImageId")));
+                out.writeInt(getFeatureIndex(row.get("FeatureId")));
+                out.writeInt(Integer.parseInt(row.get("X")));
+                out.writeInt(Integer.parseInt(row.get("Y")));
+            }
+
+            out.writeInt(adjacentImages.size());
+            for (Map<String, String> row : adjacentImages) {
+                out.writeInt(getImageIndex(row.get("ImageId")));
+                out.writeInt(getFeatureIndex(row.get("FeatureId")));
+                out.writeInt(getImageIndex(row.get("AdjacentImageId")));
+            }
+
+            out.writeInt(orientationImages.size());
+            for (Map<String, String> row : orientationImages) {
+                out.writeInt(getImageIndex(row.get("ImageId")));
+                out.writeFloat(Float.parseFloat(row.get("MinYaw")));
+                out.writeFloat(Float.parseFloat(row.get("MaxYaw")));
+                out.writeFloat(Float.parseFloat(row.get("MinPitch")));
+                out.writeFloat(Float.parseFloat(row.get("MaxPitch")));
+                out.writeFloat(Float.parseFloat(row.get("MinRoll")));
+                out.writeFloat(Float.parseFloat(row.get("MaxRoll")));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private int intern(String string) {
+        Integer index = mStringIndexes.get(string);
+        if (index == null) {
+            index = mStrings.size();
+            mStrings.add(string);
+            mStringIndexes.put(string, index);
+        }
+        return index;
+    }
+
+    private int getImageIndex(String imageId) {
+        Integer index = mImageIndexes.get(imageId);
+        return index == null ? -1 : index;
+    }
+
+    private int getFeatureIndex(String featureId) {
+        Integer index = mFeatureIndexes.get(featureId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Minimal reader for the theme csv files: the first line is the header, the values
+     * don't contain commas or quotes, and trailing empty columns may be omitted.
+     */
+    private static List<Map<String, String>> readCsv(File file) throws IOException {
+        List<Map<String, String>> rows = new ArrayList<>();
+        if (!file.exists()) return rows;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String[] header = null;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.trim().isEmpty()) continue;
+                String[] values = line.split(",", -1);
+                if (header == null) {
+                    header = values;
+                    continue;
+                }
+                Map<String, String> row = new LinkedHashMap<>();
+                for (int i = 0; i < header.length; i++) {
+                    row.put(header[i].trim(), i < values.length ? values[i].trim() : "");
+                }
+                rows.add(row);
+            }
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+}
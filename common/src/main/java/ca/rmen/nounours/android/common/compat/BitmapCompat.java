@@ -24,10 +24,15 @@ import android.graphics.BitmapFactory;
 
 public class BitmapCompat {
 
+    /**
+     * The configuration used to decode the theme images.
+     */
+    private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.RGB_565;
+
     public static BitmapFactory.Options createBitmapFactoryOptions(int sampleSize) {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inSampleSize = sampleSize;
-        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inPreferredConfig = BITMAP_CONFIG;
         if (ApiHelper.getAPILevel() >= 4) {
             Api4Helper.setBitmapFactoryOptions(options);
         }
@@ -0,0 +1,62 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.common.compat;
+
+import android.media.AudioManager;
+import android.media.SoundPool;
+
+public class SoundPoolCompat {
+
+    public interface LoadListener {
+        /**
+         * A sample of the sound pool was loaded.
+         *
+         * @param success false if the sample couldn't be decoded.
+         */
+        void onLoadComplete(int sampleId, boolean success);
+    }
+
+    private SoundPoolCompat() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return a sound pool for short sound effects of the app.
+     */
+    public static SoundPool createSoundPool(int maxStreams) {
+        if (ApiHelper.getAPILevel() >= 21) {
+            return Api21Helper.createSoundPool(maxStreams);
+        }
+        //noinspection deprecation
+        return new SoundPool(maxStreams, AudioManager.STREAM_MUSIC, 0);
+    }
+
+    /**
+     * @return false if the completion of the loads can't be listened to on this device.  The
+     * samples can then be played when the load returns, but may not be ready yet.
+     */
+    public static boolean setLoadListener(SoundPool soundPool, LoadListener listener) {
+        if (ApiHelper.getAPILevel() >= 8) {
+            Api8Helper.setLoadListener(soundPool, listener);
+            return true;
+        }
+        return false;
+    }
+}
@@ -23,6 +23,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
@@ -37,6 +38,7 @@ import ca.rmen.nounours.NounoursVibrateHandler;
 import ca.rmen.nounours.android.common.Constants;
 import ca.rmen.nounours.android.common.nounours.cache.ImageCache;
 import ca.rmen.nounours.android.common.nounours.cache.NounoursResourceCache;
+import ca.rmen.nounours.android.common.nounours.theme.ThemeCatalog;
 import ca.rmen.nounours.android.common.settings.NounoursSettings;
 import ca.rmen.nounours.android.common.util.ThemeUtil;
 import ca.rmen.nounours.common.R;
@@ -64,7 +66,24 @@ public class AndroidNounours extends Nounours {
     private int mViewHeight;
     private final NounoursResourceCache mNounoursResourceCache;
     private final AtomicBoolean mOkToDraw = new AtomicBoolean(false);
+    private final AtomicBoolean mIsReady = new AtomicBoolean(false);
+    private Boolean mPendingPing;
+    private ThemeCatalog mThemeCatalog;
     private final NounoursRenderer mRenderer;
+    private final TouchTracker mTouchTracker;
+    private final InputLatencyTracer mInputLatencyTracer;
+    // Set to the UI thread while it handles a batch of move events: the images it displays are
+    // drawn once, at the end of the batch.  The animation thread keeps drawing right away.
+    private volatile Thread mDeferredDisplayThread;
+    private Image mDeferredImage;
+    private volatile NounoursStateListener mStateListener;
+    // Null if the vibrate handler doesn't precompile the vibration of the animations.
+    private AnimationVibrator mAnimationVibrator;
+    private volatile boolean mIsVibrateEnabled;
+    private volatile long mLastUserActivity = SystemClock.uptimeMillis();
+    private volatile boolean mIsIdle;
+    // Set by onDestroy: the init and theme loader threads may still be running.
+    private volatile boolean mIsDestroyed;
 
     /**
      * Open the CSV data files and call the superclass
@@ -84,6 +103,26 @@ public class AndroidNounours extends Nounours {
                            NounoursSoundHandler soundHandler,
                            NounoursVibrateHandler vibrateHandler,
                            ThemeLoadListener listener) {
+        this(tag, context, uiHandler, settings, surfaceHolder, renderer, nounoursResourceCache,
+                soundHandler, vibrateHandler, listener, false);
+    }
+
+    /**
+     * @param asyncInit if true, this constructor returns immediately, and the CSV data files
+     *                  are read in a background thread.  Until {@link #isReady()} returns true,
+     *                  a placeholder frame is displayed, and input should be ignored.
+     */
+    public AndroidNounours(String tag,
+                           Context context,
+                           Handler uiHandler,
+                           NounoursSettings settings,
+                           SurfaceHolder surfaceHolder,
+                           NounoursRenderer renderer,
+                           NounoursResourceCache nounoursResourceCache,
+                           final NounoursSoundHandler soundHandler,
+                           final NounoursVibrateHandler vibrateHandler,
+                           ThemeLoadListener listener,
+                           boolean asyncInit) {
 
         mTag = "/" + tag;
         mContext = context;
@@ -93,30 +132,145 @@ public class AndroidNounours extends Nounours {
         mListener = listener;
         mNounoursResourceCache = nounoursResourceCache;
         mRenderer = renderer;
-        StreamLoader streamLoader = new AssetStreamLoader(context);
+        mInputLatencyTracer = InputLatencyTracer.getInstance(tag);
+        mTouchTracker = new TouchTracker(this, mInputLatencyTracer);
+        mSurfaceHolder.addCallback(mSurfaceHolderCallback);
+
+        if (asyncInit) {
+            Thread initializer = new Thread() {
+                @Override
+                public void run() {
+                    initNounours(soundHandler, vibrateHandler);
+                }
+            };
+            initializer.start();
+        } else {
+            initNounours(soundHandler, vibrateHandler);
+        }
+    }
+
+    private void initNounours(NounoursSoundHandler soundHandler, NounoursVibrateHandler vibrateHandler) {
+        Log.v(TAG + mTag, "initNounours");
+        StreamLoader streamLoader = new AssetStreamLoader(mContext);
 
         String themeId = mSettings.getThemeId();
-        AnimationHandler animationHandler = new AnimationHandler(this);
-        final InputStream propertiesFile = context.getResources().openRawResource(R.raw.nounours);
-        final InputStream themesFile = context.getResources().openRawResource(R.raw.themes);
-        mSurfaceHolder.addCallback(mSurfaceHolderCallback);
+        SoundClock soundClock = soundHandler instanceof SoundClock ? (SoundClock) soundHandler : null;
+        mAnimationVibrator = vibrateHandler instanceof AnimationVibrator ? (AnimationVibrator) vibrateHandler : null;
+        AnimationHandler animationHandler = new AnimationHandler(this, soundClock, mAnimationVibrator);
 
         try {
-            init(streamLoader, animationHandler, soundHandler, vibrateHandler, propertiesFile,
-                    themesFile, themeId);
+            // The properties and themes files are read once per process, by the catalog.
+            mThemeCatalog = ThemeCatalog.getInstance(mContext);
+            init(streamLoader, animationHandler, soundHandler, vibrateHandler,
+                    mThemeCatalog.openPropertiesFile(), mThemeCatalog.openThemesFile(), themeId);
             setEnableVibrate(mSettings.isSoundEnabled());
             setEnableSound(mSettings.isSoundEnabled());
             setIdleTimeout(mSettings.getIdleTimeout());
         } catch (final IOException e) {
             Log.e(TAG + mTag, "Error initializing nounours", e);
         }
+        mIsReady.set(true);
+        runTask(new Runnable() {
+            @Override
+            public void run() {
+                // Apply the ping state requested while we were initializing.
+                if (mPendingPing != null) {
+                    AndroidNounours.super.doPing(mPendingPing);
+                    mPendingPing = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true once the CSV data files have been read.  Before that, touch and sensor
+     * input must be ignored.
+     */
+    public boolean isReady() {
+        return mIsReady.get();
+    }
+
+    public void setStateListener(NounoursStateListener stateListener) {
+        mStateListener = stateListener;
+    }
+
+    /**
+     * @return true if the user hasn't touched or shaken the device for the idle timeout.
+     */
+    public boolean isIdle() {
+        return mIsIdle;
+    }
+
+    @Override
+    public void setEnableVibrate(boolean enableVibrate) {
+        super.setEnableVibrate(enableVibrate);
+        mIsVibrateEnabled = enableVibrate;
+    }
+
+    /**
+     * @return true if the animations which vibrate should start their vibration.
+     */
+    boolean isVibrateEnabled() {
+        return mIsVibrateEnabled;
+    }
+
+    /**
+     * Called by the {@link AnimationHandler} when an animation starts or stops.
+     */
+    void onAnimationStateChanged() {
+        notifyStateChanged();
+    }
+
+    private void notifyStateChanged() {
+        NounoursStateListener stateListener = mStateListener;
+        if (stateListener != null) stateListener.onNounoursStateChanged(isAnimationRunning(), isShaking(), mIsIdle);
+    }
+
+    private void onUserActivity() {
+        mLastUserActivity = SystemClock.uptimeMillis();
+        if (mIsIdle) {
+            mIsIdle = false;
+            notifyStateChanged();
+        }
+    }
+
+    private final Runnable mIdleCheck = new Runnable() {
+        @Override
+        public void run() {
+            long idleTimeout = mSettings.getIdleTimeout();
+            long inactivity = SystemClock.uptimeMillis() - mLastUserActivity;
+            if (inactivity >= idleTimeout) {
+                if (!mIsIdle) {
+                    mIsIdle = true;
+                    notifyStateChanged();
+                }
+                // The next activity makes us active again: check from then.
+                inactivity = 0;
+            }
+            mUIHandler.postDelayed(this, idleTimeout - inactivity);
+        }
+    };
+
+    /**
+     * @return the object to give the touch gestures to, from the UI thread.
+     */
+    public TouchTracker getTouchTracker() {
+        return mTouchTracker;
     }
 
     @Override
     protected boolean cacheResources() {
         Theme theme = getCurrentTheme();
-        return mNounoursResourceCache.loadImages(theme, mImageCacheListener)
+        boolean result = mNounoursResourceCache.loadImages(theme, mImageCacheListener)
                 && mNounoursResourceCache.loadSounds(theme);
+        // We're called from the init or theme loader thread. If we were destroyed meanwhile,
+        // onDestroy may have freed the resources before we acquired them: free them again.
+        if (mIsDestroyed) {
+            mNounoursResourceCache.freeImages();
+            mNounoursResourceCache.freeSounds();
+            return false;
+        }
+        return result;
     }
 
     /**
@@ -125,6 +279,7 @@ public class AndroidNounours extends Nounours {
     @Override
     public void useTheme(final String id) {
         Log.v(TAG + mTag, "useTheme " + id);
+        if (mIsDestroyed) return;
 
         // Get the name of this theme.
         Theme theme = getThemes().get(id);
@@ -134,12 +289,18 @@ public class AndroidNounours extends Nounours {
         mNounoursResourceCache.freeImages();
         mNounoursResourceCache.freeSounds();
 
+        final int themeImageCount = theme.getImages().size();
+        final String loadingMessage = mContext.getString(R.string.loading, themeLabel);
         Thread themeLoader = new Thread() {
             @SuppressWarnings("synthetic-access")
             @Override
             public void run() {
 
+                useSharedTheme(id);
                 AndroidNounours.super.useTheme(id);
+                if (mAnimationVibrator != null) {
+                    mAnimationVibrator.compileWaveforms(getAnimations().values(), getVibrateInterval());
+                }
 
                 runTask(new Runnable() {
                     public void run() {
@@ -148,19 +309,85 @@ public class AndroidNounours extends Nounours {
                 });
             }
         };
-        mListener.onThemeLoadStart(theme.getImages().size(), mContext.getString(R.string.loading, themeLabel));
+        // We may be called from the initialization thread.
+        runTask(new Runnable() {
+            public void run() {
+                mListener.onThemeLoadStart(themeImageCount, loadingMessage);
+            }
+        });
         themeLoader.start();
     }
 
     /**
-     * Display a picture on the screen.
+     * Replace our copy of the theme with the one from the process-wide catalog, so that the
+     * theme data files are parsed only once per process.
+     */
+    private void useSharedTheme(String id) {
+        if (mThemeCatalog == null) return;
+        try {
+            Theme sharedTheme = mThemeCatalog.getTheme(id);
+            if (sharedTheme != null && getThemes().get(id) != sharedTheme) {
+                getThemes().put(id, sharedTheme);
+            }
+        } catch (IOException e) {
+            Log.w(TAG + mTag, "Couldn't load theme " + id + " from the catalog", e);
+        }
+    }
+
+    @Override
+    public void onPress(int x, int y) {
+        onUserActivity();
+        super.onPress(x, y);
+    }
+
+    /**
+     * Handle the move samples received during one frame, and draw the resulting image once.
+     */
+    void onMove(float[] x, float[] y, int count) {
+        onUserActivity();
+        mDeferredDisplayThread = Thread.currentThread();
+        try {
+            for (int i = 0; i < count; i++) {
+                onMove((int) x[i], (int) y[i]);
+            }
+        } finally {
+            mDeferredDisplayThread = null;
+        }
+        Image image = mDeferredImage;
+        mDeferredImage = null;
+        if (image != null) displayImage(image);
+    }
+
+    @Override
+    public void onRelease() {
+        onUserActivity();
+        super.onRelease();
+    }
+
+    @Override
+    public void onFling(int x, int y, float velocityX, float velocityY) {
+        onUserActivity();
+        super.onFling(x, y, velocityX, velocityY);
+    }
+
+    @Override
+    public void onShake() {
+        onUserActivity();
+        super.onShake();
+    }
+
+    /**
+     * Display a picture on the screen.  This is called for every frame, so it doesn't log.
      *
      * @see ca.rmen.nounours.Nounours#displayImage(ca.rmen.nounours.data.Image)
      */
     @Override
     protected void displayImage(final Image image) {
-        Log.v(TAG + mTag, "displayImage " + image);
         if (image == null) return;
+        if (Thread.currentThread() == mDeferredDisplayThread) {
+            mDeferredImage = image;
+            return;
+        }
         if (!mOkToDraw.get()) return;
         final Bitmap bitmap = mNounoursResourceCache.getDrawableImage(mContext, image);
         if (bitmap == null) return;
@@ -169,11 +396,55 @@ public class AndroidNounours extends Nounours {
         if (c != null) {
             mRenderer.render(mSettings, bitmap, c, mViewWidth, mViewHeight);
             mSurfaceHolder.unlockCanvasAndPost(c);
+            mInputLatencyTracer.onFramePresented();
         }
     }
 
     public void redraw() {
-        displayImage(getCurrentImage());
+        if (mIsReady.get()) displayImage(getCurrentImage());
+        else displayPlaceholder();
+    }
+
+    /**
+     * Display a plain background, until we have an image to display.
+     */
+    private void displayPlaceholder() {
+        if (!mOkToDraw.get()) return;
+        Canvas c = mSurfaceHolder.lockCanvas();
+        if (c != null) {
+            c.drawColor(mSettings.isGrayscale() ? 0xff000000 : mSettings.getBackgroundColor());
+            mSurfaceHolder.unlockCanvasAndPost(c);
+        }
+    }
+
+    /**
+     * If we're still initializing, the ping state is applied once we're ready.
+     * The idle state is tracked while we're pinging.
+     */
+    @Override
+    public void doPing(boolean doPing) {
+        mUIHandler.removeCallbacks(mIdleCheck);
+        if (doPing) {
+            onUserActivity();
+            mUIHandler.postDelayed(mIdleCheck, mSettings.getIdleTimeout());
+        }
+        if (mIsReady.get()) {
+            // A state requested before we were ready must not override this one.
+            mPendingPing = null;
+            super.doPing(doPing);
+        } else {
+            mPendingPing = doPing;
+        }
+    }
+
+    @Override
+    public void onResume() {
+        if (mIsReady.get()) super.onResume();
+    }
+
+    @Override
+    public void stopSound() {
+        if (mIsReady.get()) super.stopSound();
     }
 
     /**
@@ -204,6 +475,10 @@ public class AndroidNounours extends Nounours {
      */
     public void onDestroy() {
         Log.v(TAG + mTag, "destroy");
+        mIsDestroyed = true;
+        mUIHandler.removeCallbacks(mIdleCheck);
+        mStateListener = null;
+        mTouchTracker.cancelPendingMoves();
         mNounoursResourceCache.freeImages();
         mNounoursResourceCache.freeSounds();
     }
@@ -222,6 +497,7 @@ public class AndroidNounours extends Nounours {
      * Reread the shared preferences and apply the new app_settings.
      */
     public void reloadSettings() {
+        if (!mIsReady.get()) return;
         if (mSettings.isSoundEnabled() && !isSoundEnabled()) {
             mNounoursResourceCache.loadSounds(getCurrentTheme());
         } else if (!mSettings.isSoundEnabled() && isSoundEnabled()) {
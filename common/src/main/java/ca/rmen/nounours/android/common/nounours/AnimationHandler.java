@@ -26,7 +26,6 @@ import android.util.Log;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import ca.rmen.nounours.Nounours;
 import ca.rmen.nounours.NounoursAnimationHandler;
 import ca.rmen.nounours.android.common.Constants;
 import ca.rmen.nounours.data.Animation;
@@ -34,19 +33,45 @@ import ca.rmen.nounours.data.AnimationImage;
 
 /**
  * Manages the Nounours animations displayed to the Android device.
+ * <p/>
+ * Each frame is displayed at a deadline computed from the start of the animation, rather than
+ * after sleeping for its duration, so that slow frames don't delay the following ones.  A frame
+ * whose deadline passed more than a frame ago is skipped.
+ * <p/>
+ * If the animation has a sound, and a {@link SoundClock} is given, the animation starts when the
+ * sound starts playing, and the deadlines are anchored to the start time of the sound reported
+ * by the audio output: the sound and the frames stay within a frame of each other.
+ * <p/>
+ * If the animation vibrates, and an {@link AnimationVibrator} is given, its precompiled vibration
+ * is started with the first frame displayed.
  *
  * @author Carmen Alvarez
  */
 class AnimationHandler implements NounoursAnimationHandler {
     private static final String TAG = Constants.TAG + AnimationHandler.class.getSimpleName();
 
-    private final Nounours mNounours;
+    // How long the first frame waits for the sound of the animation to start.
+    private static final long MAX_SOUND_WAIT_MS = 250;
+    // A sound which started longer than this before the animation was requested isn't its sound.
+    private static final long MAX_SOUND_LEAD_NS = 100000000L;
+
+    private final AndroidNounours mNounours;
+    private final SoundClock mSoundClock;
+    private final AnimationVibrator mAnimationVibrator;
     private final AtomicBoolean mIsDoingAnimation = new AtomicBoolean();
     private final Handler mBackgroundHandler;
     private final AnimationTask mAnimationTask;
 
-    public AnimationHandler(Nounours nounours) {
+    /**
+     * @param soundClock the clock of the sound handler, to synchronize the animations with their
+     *                   sounds, or null.
+     * @param animationVibrator the vibrate handler, to start the vibration of the animations with
+     *                          their first frame, or null.
+     */
+    public AnimationHandler(AndroidNounours nounours, SoundClock soundClock, AnimationVibrator animationVibrator) {
         mNounours = nounours;
+        mSoundClock = soundClock;
+        mAnimationVibrator = animationVibrator;
         HandlerThread thread = new HandlerThread(TAG);
         thread.start();
         mBackgroundHandler = new Handler(thread.getLooper());
@@ -71,7 +96,7 @@ class AnimationHandler implements NounoursAnimationHandler {
     @Override
     public void doAnimation(final Animation animation, final boolean isDynamicAnimation) {
         Log.v(TAG, "doAnimation: " + animation);
-        mAnimationTask.setAnimation(animation, isDynamicAnimation);
+        mAnimationTask.setAnimation(animation, isDynamicAnimation, System.nanoTime());
         mBackgroundHandler.post(mAnimationTask);
     }
 
@@ -82,7 +107,10 @@ class AnimationHandler implements NounoursAnimationHandler {
      */
     @Override
     public void stopAnimation() {
-        mIsDoingAnimation.set(false);
+        if (mIsDoingAnimation.getAndSet(false)) {
+            if (mAnimationVibrator != null) mAnimationVibrator.cancelWaveform();
+            mNounours.onAnimationStateChanged();
+        }
     }
 
     /**
@@ -99,36 +127,79 @@ class AnimationHandler implements NounoursAnimationHandler {
 
         private Animation mAnimation;
         private boolean mIsDynamicAnimation;
+        private long mRequestTime;
 
-        public void setAnimation(Animation animation, boolean isDynamicAnimation) {
+        public void setAnimation(Animation animation, boolean isDynamicAnimation, long requestTime) {
             mAnimation = animation;
             mIsDynamicAnimation = isDynamicAnimation;
+            mRequestTime = requestTime;
         }
 
         @Override
         public void run() {
             // Note that we are doing an animation
             mIsDoingAnimation.set(true);
+            mNounours.onAnimationStateChanged();
+
+            String soundId = mSoundClock == null ? null : mAnimation.getSoundId();
+            long startTime = getSoundStartTime(soundId, true);
+            if (startTime <= 0) {
+                soundId = null;
+                startTime = System.nanoTime();
+            }
+
+            boolean vibrate = mAnimationVibrator != null && mAnimation.isVibrate() && mNounours.isVibrateEnabled();
 
-            // Iterate through each of the images and display them.
+            // Iterate through each of the images and display them, each at its deadline.
+            long frameOffset = 0;
+            int imageCount = mAnimation.getImages().size();
             for (int i = 0; i < mAnimation.getRepeat(); i++) {
-                for (AnimationImage image : mAnimation.getImages()) {
-                    long before = System.currentTimeMillis();
+                for (int j = 0; j < imageCount; j++) {
+                    AnimationImage image = mAnimation.getImages().get(j);
+                    long frameDuration = (long) (mAnimation.getInterval() * image.getDuration()) * 1000000L;
+                    // The audio output may have reported a more precise start time for the sound.
+                    long soundStartTime = getSoundStartTime(soundId, false);
+                    if (soundStartTime > 0) startTime = soundStartTime;
+                    long deadline = startTime + frameOffset;
+                    frameOffset += frameDuration;
+                    long delay = deadline - System.nanoTime();
+                    boolean isLastFrame = i == mAnimation.getRepeat() - 1 && j == imageCount - 1;
+                    // Skip the frames we're too late for, to catch up with the sound.
+                    if (delay < -frameDuration && !isLastFrame) continue;
+                    if (delay > 0) SystemClock.sleep(delay / 1000000);
+                    if (!mIsDoingAnimation.get()) break;
+                    if (vibrate) {
+                        mAnimationVibrator.startWaveform(mAnimation.getId());
+                        vibrate = false;
+                    }
                     mNounours.setImage(image.getImage());
-                    long frameDuration = (long) (mAnimation.getInterval() * image.getDuration());
-                    // after - before: time wasted displaying the image itself.
-                    // we'll subtract it from the time to sleep for this frame.
-                    long after = System.currentTimeMillis();
-                    long frameDurationCorrection = after - before;
-                    long shorterFrameDuration = frameDuration - frameDurationCorrection;
-                    if (shorterFrameDuration > 0) SystemClock.sleep(shorterFrameDuration);
-                    if(!mIsDoingAnimation.get()) break;
                 }
                 if(!mIsDoingAnimation.get()) break;
             }
+            // Let the last frame be displayed for its duration.
+            long delay = startTime + frameOffset - System.nanoTime();
+            if (delay > 0 && mIsDoingAnimation.get()) SystemClock.sleep(delay / 1000000);
             if (!mIsDynamicAnimation) mNounours.reset();
             // No longer doing an animation.
-            mIsDoingAnimation.set(false);
+            if (mIsDoingAnimation.getAndSet(false)) mNounours.onAnimationStateChanged();
+        }
+
+        /**
+         * @param wait true to wait for the sound to start, if it hasn't yet.
+         * @return the start time of the sound of this animation, or 0 or less if it's unknown.
+         */
+        private long getSoundStartTime(String soundId, boolean wait) {
+            if (soundId == null) return SoundClock.START_TIME_NONE;
+            try {
+                long startTime = wait ? mSoundClock.awaitSoundStartTime(soundId, MAX_SOUND_WAIT_MS)
+                        : mSoundClock.getSoundStartTime(soundId);
+                // Ignore a previous play of the same sound.
+                if (startTime > 0 && startTime < mRequestTime - MAX_SOUND_LEAD_NS) return SoundClock.START_TIME_NONE;
+                return startTime;
+            } catch (InterruptedException e) {
+                Log.v(TAG, "Interrupted waiting for " + soundId, e);
+                return SoundClock.START_TIME_NONE;
+            }
         }
     }
 }
@@ -0,0 +1,48 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.common.nounours;
+
+import java.util.Collection;
+
+import ca.rmen.nounours.data.Animation;
+
+/**
+ * A vibrate handler which precompiles the vibration of each animation from the timing of its
+ * frames, so that the {@link AnimationHandler} starts it with the first frame of the animation.
+ */
+public interface AnimationVibrator {
+    /**
+     * Compile the vibration waveforms of the given animations, replacing the previous ones.
+     * Called by the theme loader thread.
+     *
+     * @param vibrateInterval the maximum duration of the vibration at the start of each frame.
+     */
+    void compileWaveforms(Collection<Animation> animations, long vibrateInterval);
+
+    /**
+     * Start the precompiled vibration of the given animation, if it has one.
+     */
+    void startWaveform(String animationId);
+
+    /**
+     * Stop the vibration of an animation.
+     */
+    void cancelWaveform();
+}
@@ -0,0 +1,208 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.common.nounours;
+
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.rmen.nounours.android.common.Constants;
+
+/**
+ * Measures the time between a touch or fling event reaching our listeners, and the resulting
+ * frame being posted to the surface.
+ * <p/>
+ * Tracing is disabled by default.  To enable it:
+ * <pre>adb shell setprop log.tag.Nounours/InputLatency VERBOSE</pre>
+ * and restart the app.  The histograms are printed by:
+ * <pre>adb shell dumpsys activity ca.rmen.nounours/.MainActivity</pre>
+ * or with <code>dumpsys activity service</code> for the live wallpaper and Dream services.
+ */
+public class InputLatencyTracer {
+    private static final String TAG = Constants.TAG + "InputLatency";
+
+    // The kinds of input, each with its own pending time and histogram: a fling animation is
+    // displayed later by the animation thread, and must not be cancelled by the release which
+    // follows it.
+    static final int INPUT_TOUCH = 0;
+    static final int INPUT_FLING = 1;
+    private static final String[] INPUT_NAMES = {"touch", "fling"};
+
+    // An input which hasn't produced a frame after this delay didn't change the image.
+    private static final long MAX_LATENCY_NS = 1000000000L;
+
+    // Upper bounds of the histogram buckets, in milliseconds.  The last bucket has no upper bound.
+    private static final int[] BUCKETS_MS = {2, 4, 8, 12, 16, 24, 33, 50, 66, 100, 150, 250, 500, 1000};
+
+    private static final boolean sIsEnabled = Log.isLoggable(TAG, Log.VERBOSE);
+    private static final Map<String, InputLatencyTracer> sTracers = new TreeMap<>();
+
+    private final String mName;
+    private final boolean mIsEnabled;
+    private final AtomicLong[] mPendingInputTimes = new AtomicLong[INPUT_NAMES.length];
+    private final Histogram[] mHistograms = new Histogram[INPUT_NAMES.length];
+
+    /**
+     * @return the tracer for the given Nounours instance name.  The histogram is kept for
+     * the life of the process.
+     */
+    public static synchronized InputLatencyTracer getInstance(String name) {
+        InputLatencyTracer tracer = sTracers.get(name);
+        if (tracer == null) {
+            tracer = new InputLatencyTracer(name, sIsEnabled);
+            sTracers.put(name, tracer);
+        }
+        return tracer;
+    }
+
+    public static boolean isEnabled() {
+        return sIsEnabled;
+    }
+
+    /**
+     * @return the timestamp to tag an input event with, or 0 if tracing is disabled.
+     */
+    public static long now() {
+        return sIsEnabled ? System.nanoTime() : 0;
+    }
+
+    InputLatencyTracer(String name, boolean isEnabled) {
+        mName = name;
+        mIsEnabled = isEnabled;
+        for (int i = 0; i < INPUT_NAMES.length; i++) {
+            mPendingInputTimes[i] = new AtomicLong();
+            mHistograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * The input event of the given kind, with the given timestamp, is about to be handled.
+     * The next frame presented is attributed to it.
+     *
+     * @param input {@link #INPUT_TOUCH} or {@link #INPUT_FLING}
+     */
+    void onInput(int input, long inputTime) {
+        if (inputTime == 0) return;
+        mPendingInputTimes[input].set(inputTime);
+    }
+
+    /**
+     * The input event was handled synchronously, without changing the image.
+     */
+    void onInputHandled(int input, long inputTime) {
+        if (inputTime == 0) return;
+        mPendingInputTimes[input].compareAndSet(inputTime, 0);
+    }
+
+    /**
+     * A frame was just posted to the surface.
+     */
+    void onFramePresented() {
+        if (!mIsEnabled) return;
+        long now = System.nanoTime();
+        for (int i = 0; i < INPUT_NAMES.length; i++) {
+            long inputTime = mPendingInputTimes[i].getAndSet(0);
+            if (inputTime == 0) continue;
+            long latency = now - inputTime;
+            if (latency > MAX_LATENCY_NS) continue;
+            synchronized (this) {
+                mHistograms[i].record(latency);
+            }
+        }
+    }
+
+    /**
+     * @return the number of frames attributed to the given kind of input.
+     */
+    synchronized int getCount(int input) {
+        return mHistograms[input].mCount;
+    }
+
+    /**
+     * Print the histograms of all the Nounours instances of the process.
+     */
+    public static void dumpAll(PrintWriter writer) {
+        writer.println("Input to present latency:");
+        if (!sIsEnabled) {
+            writer.println("  disabled. Enable with: adb shell setprop log.tag." + TAG + " VERBOSE");
+            return;
+        }
+        synchronized (InputLatencyTracer.class) {
+            for (InputLatencyTracer tracer : sTracers.values()) {
+                tracer.dump(writer);
+            }
+        }
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        for (int i = 0; i < INPUT_NAMES.length; i++) {
+            mHistograms[i].dump(writer, mName + " " + INPUT_NAMES[i]);
+        }
+    }
+
+    private static class Histogram {
+        private final int[] mCounts = new int[BUCKETS_MS.length + 1];
+        private long mTotalNs;
+        private long mMaxNs;
+        private int mCount;
+
+        void record(long latencyNs) {
+            long latencyMs = latencyNs / 1000000;
+            int bucket = 0;
+            while (bucket < BUCKETS_MS.length && latencyMs >= BUCKETS_MS[bucket]) bucket++;
+            mCounts[bucket]++;
+            mCount++;
+            mTotalNs += latencyNs;
+            if (latencyNs > mMaxNs) mMaxNs = latencyNs;
+        }
+
+        void dump(PrintWriter writer, String label) {
+            writer.println("  " + label + ": " + mCount + " frames");
+            if (mCount == 0) return;
+            writer.println(String.format(Locale.US, "    avg %.1f ms, max %.1f ms, p50 <%s, p90 <%s, p99 <%s",
+                    mTotalNs / mCount / 1000000f, mMaxNs / 1000000f,
+                    getPercentileBound(50), getPercentileBound(90), getPercentileBound(99)));
+            for (int i = 0; i < mCounts.length; i++) {
+                if (mCounts[i] == 0) continue;
+                writer.println("    " + getBucketLabel(i) + ": " + mCounts[i]);
+            }
+        }
+
+        private String getPercentileBound(int percentile) {
+            int threshold = (int) Math.ceil(mCount * percentile / 100f);
+            int count = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                count += mCounts[i];
+                if (count >= threshold) return i < BUCKETS_MS.length ? BUCKETS_MS[i] + " ms" : "inf";
+            }
+            return "inf";
+        }
+    }
+
+    private static String getBucketLabel(int bucket) {
+        int min = bucket == 0 ? 0 : BUCKETS_MS[bucket - 1];
+        if (bucket == BUCKETS_MS.length) return ">= " + min + " ms";
+        return min + "-" + BUCKETS_MS[bucket] + " ms";
+    }
+}
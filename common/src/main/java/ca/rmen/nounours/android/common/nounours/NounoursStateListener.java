@@ -0,0 +1,34 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.common.nounours;
+
+/**
+ * Notified when Nounours starts or stops an animation, or becomes idle or active.
+ * <p/>
+ * May be called from any thread.
+ */
+public interface NounoursStateListener {
+    /**
+     * @param isAnimationRunning true if an animation is being displayed.
+     * @param isShaking          true if the animation being displayed is the shake animation.
+     * @param isIdle             true if the user hasn't interacted with Nounours for the idle timeout.
+     */
+    void onNounoursStateChanged(boolean isAnimationRunning, boolean isShaking, boolean isIdle);
+}
@@ -0,0 +1,52 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.common.nounours;
+
+/**
+ * The clock shared by a sound handler and the {@link AnimationHandler}, so that the frames of an
+ * animation are scheduled from the time its sound actually started.
+ * <p/>
+ * All the times are {@link System#nanoTime()}.
+ */
+public interface SoundClock {
+    /**
+     * The start time of a sound which will start playing, but hasn't started yet.
+     */
+    long START_TIME_PENDING = 0;
+
+    /**
+     * The start time of a sound which isn't playing, and won't start.
+     */
+    long START_TIME_NONE = -1;
+
+    /**
+     * @return the time at which the given sound started playing on the audio output,
+     * {@link #START_TIME_PENDING}, or {@link #START_TIME_NONE}.  The time may be refined as
+     * the audio output reports the progress of the playback.
+     */
+    long getSoundStartTime(String soundId);
+
+    /**
+     * Wait until the given sound starts playing, or until the timeout.
+     *
+     * @return the same as {@link #getSoundStartTime(String)}.
+     */
+    long awaitSoundStartTime(String soundId, long timeoutMs) throws InterruptedException;
+}
@@ -0,0 +1,148 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.common.nounours;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+/**
+ * Forwards the touch gestures to Nounours, on the UI thread like the rest of its input.
+ * <p/>
+ * Move events are coalesced: all the samples received during a frame, including the historical
+ * samples of each {@link MotionEvent}, are handled together, and the resulting image is drawn once.
+ * Presses, releases and flings are handled right away, after the pending moves.
+ * <p/>
+ * If {@link InputLatencyTracer} is enabled, each gesture is tagged with the time it was received.
+ */
+public class TouchTracker {
+    private static final long FRAME_INTERVAL_MS = 16;
+
+    private final AndroidNounours mNounours;
+    private final InputLatencyTracer mInputLatencyTracer;
+    private final Handler mHandler;
+
+    // Only accessed by the UI thread.
+    private float[] mPendingX = new float[32];
+    private float[] mPendingY = new float[32];
+    private int mPendingCount;
+    private boolean mFlushScheduled;
+    private long mLastFlushTime;
+    private long mPendingInputTime;
+
+    TouchTracker(AndroidNounours nounours, InputLatencyTracer inputLatencyTracer) {
+        mNounours = nounours;
+        mInputLatencyTracer = inputLatencyTracer;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public void onPress(int x, int y) {
+        long inputTime = InputLatencyTracer.now();
+        flushMoves();
+        mInputLatencyTracer.onInput(InputLatencyTracer.INPUT_TOUCH, inputTime);
+        mNounours.onPress(x, y);
+        mInputLatencyTracer.onInputHandled(InputLatencyTracer.INPUT_TOUCH, inputTime);
+    }
+
+    /**
+     * Queue the samples of the given move event.  They are handled at the next frame.
+     */
+    public void onMove(MotionEvent event) {
+        int historySize = event.getHistorySize();
+        // The latency of a batch is measured from its oldest sample.
+        if (mPendingCount == 0) mPendingInputTime = InputLatencyTracer.now();
+        ensurePendingCapacity(mPendingCount + historySize + 1);
+        for (int i = 0; i < historySize; i++) {
+            mPendingX[mPendingCount] = event.getHistoricalX(i);
+            mPendingY[mPendingCount] = event.getHistoricalY(i);
+            mPendingCount++;
+        }
+        mPendingX[mPendingCount] = event.getX();
+        mPendingY[mPendingCount] = event.getY();
+        mPendingCount++;
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            long delay = mLastFlushTime + FRAME_INTERVAL_MS - SystemClock.uptimeMillis();
+            mHandler.postDelayed(mFlushRunnable, delay > 0 ? delay : 0);
+        }
+    }
+
+    public void onRelease() {
+        long inputTime = InputLatencyTracer.now();
+        flushMoves();
+        mInputLatencyTracer.onInput(InputLatencyTracer.INPUT_TOUCH, inputTime);
+        mNounours.onRelease();
+        mInputLatencyTracer.onInputHandled(InputLatencyTracer.INPUT_TOUCH, inputTime);
+    }
+
+    public void onFling(int x, int y, float velocityX, float velocityY) {
+        long inputTime = InputLatencyTracer.now();
+        flushMoves();
+        // The fling animation is displayed by the animation thread: the fling stays pending
+        // until its first frame, even if a release is handled in the meantime.
+        mInputLatencyTracer.onInput(InputLatencyTracer.INPUT_FLING, inputTime);
+        mNounours.onFling(x, y, velocityX, velocityY);
+    }
+
+    /**
+     * Drop the pending moves.
+     */
+    void cancelPendingMoves() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        mPendingCount = 0;
+    }
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushMoves();
+        }
+    };
+
+    /**
+     * Handle the queued move samples.
+     */
+    private void flushMoves() {
+        if (mFlushScheduled) {
+            mFlushScheduled = false;
+            mHandler.removeCallbacks(mFlushRunnable);
+        }
+        int count = mPendingCount;
+        if (count == 0) return;
+        mPendingCount = 0;
+        mLastFlushTime = SystemClock.uptimeMillis();
+        mInputLatencyTracer.onInput(InputLatencyTracer.INPUT_TOUCH, mPendingInputTime);
+        mNounours.onMove(mPendingX, mPendingY, count);
+        mInputLatencyTracer.onInputHandled(InputLatencyTracer.INPUT_TOUCH, mPendingInputTime);
+    }
+
+    private void ensurePendingCapacity(int capacity) {
+        if (mPendingX.length >= capacity) return;
+        int newCapacity = Math.max(capacity, mPendingX.length * 2);
+        float[] pendingX = new float[newCapacity];
+        float[] pendingY = new float[newCapacity];
+        System.arraycopy(mPendingX, 0, pendingX, 0, mPendingCount);
+        System.arraycopy(mPendingY, 0, pendingY, 0, mPendingCount);
+        mPendingX = pendingX;
+        mPendingY = pendingY;
+    }
+}
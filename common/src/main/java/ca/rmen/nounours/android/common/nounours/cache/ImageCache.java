@@ -24,8 +24,8 @@ import android.os.Handler;
 import android.util.Log;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import ca.rmen.nounours.android.common.Constants;
 import ca.rmen.nounours.data.Image;
@@ -36,7 +36,8 @@ public class ImageCache {
 
     private static final String TAG = Constants.TAG + ImageCache.class.getSimpleName();
 
-    private final Map<String, Bitmap> mImageCache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Bitmap> mImageCache = new ConcurrentHashMap<>();
+    private volatile boolean mIsClosed;
 
     public interface ImageCacheListener {
         void onImageLoaded(Image image, int progress, int total);
@@ -47,14 +48,16 @@ public class ImageCache {
     }
 
     /**
-     * Load the images into memory.
+     * Load the images into memory.  The images which are already in the cache aren't decoded
+     * again, but are still reported to the listener.
      */
     public boolean cacheImages(Context context, Collection<Image> images, Handler uiHandler, final ImageCacheListener listener) {
         Log.v(TAG, "cacheImages");
         int i = 0;
         final int max = images.size();
         for (final Image image : images) {
-            Bitmap bitmap = loadImage(context, image);
+            Bitmap bitmap = mImageCache.get(image.getId());
+            if (bitmap == null) bitmap = loadImage(context, image);
             if (bitmap == null)
                 return false;
             i++;
@@ -69,8 +72,12 @@ public class ImageCache {
         return true;
     }
 
+    /**
+     * Free the images.  The cache can't be used afterwards: it returns no more images.
+     */
     public void clearImageCache() {
         Log.v(TAG, "clearImageCache");
+        mIsClosed = true;
 
         for (Bitmap bitmap : mImageCache.values()) {
             if (!bitmap.isRecycled()) bitmap.recycle();
@@ -82,25 +89,41 @@ public class ImageCache {
 
     /**
      * Find the Android image for the given nounours image.
+     *
+     * @return null if the image couldn't be loaded, or if the cache has been cleared.
      */
     public Bitmap getDrawableImage(Context context, final Image image) {
+        if (mIsClosed) return null;
         Bitmap res = mImageCache.get(image.getId());
         if (res == null) {
             Log.v(TAG, "Loading drawable image " + image);
             res = loadImage(context, image);
         }
+        if (res == null || res.isRecycled()) return null;
         return res;
     }
 
 
     /**
      * Load an image from the disk into memory. Return the Drawable for the
-     * image.
+     * image.  If another thread sharing this cache loaded the same image in the
+     * meantime, its bitmap is returned and ours is discarded.  If the cache was cleared
+     * while we were decoding, the image is discarded and null is returned.
      */
     private Bitmap loadImage(Context context, final Image image) {
         Log.v(TAG, "Loading " + image + " into memory");
         Bitmap result = BitmapUtil.createBitmap(context, image);
-        if (result != null) mImageCache.put(image.getId(), result);
+        if (result == null) return null;
+        Bitmap existing = mImageCache.putIfAbsent(image.getId(), result);
+        if (existing != null) {
+            result.recycle();
+            result = existing;
+        }
+        if (mIsClosed) {
+            mImageCache.remove(image.getId(), result);
+            result.recycle();
+            return null;
+        }
         return result;
     }
 
@@ -0,0 +1,106 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.rmen.nounours.android.common.nounours.cache;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ca.rmen.nounours.android.common.Constants;
+
+/**
+ * Process-wide registry of image caches, so that the app, live wallpaper and Dream share the
+ * decoded bitmaps when they display the same theme.
+ * <p/>
+ * Each user acquires the cache of a theme, and releases it when it no longer displays the
+ * theme. The bitmaps are freed when the last user releases the cache.
+ * <p/>
+ * The users are tracked by identity, not counted: acquiring twice or releasing a cache which
+ * wasn't acquired is logged and ignored.  They are only weakly referenced, so a user which is
+ * garbage collected without releasing its cache is detected, logged, and no longer keeps the
+ * bitmaps in memory.
+ */
+public final class ImageCacheRegistry {
+    private static final String TAG = Constants.TAG + ImageCacheRegistry.class.getSimpleName();
+
+    private static final Map<String, Entry> sEntries = new HashMap<>();
+
+    private static class Entry {
+        private final ImageCache imageCache = new ImageCache();
+        // Used as a weak set.
+        private final Map<Object, Boolean> users = new WeakHashMap<>();
+    }
+
+    private ImageCacheRegistry() {
+        // prevent instantiation
+    }
+
+    /**
+     * @param user the object which will use the cache, and release it.
+     * @return the image cache for the given theme. It must be released with
+     * {@link #release(String, Object)} when it's no longer used.
+     */
+    public static synchronized ImageCache acquire(String themeId, Object user) {
+        clearLeakedEntries();
+        Entry entry = sEntries.get(themeId);
+        if (entry == null) {
+            entry = new Entry();
+            sEntries.put(themeId, entry);
+        }
+        if (entry.users.put(user, Boolean.TRUE) != null) Log.w(TAG, "acquire " + themeId + ": already acquired by " + user);
+        Log.v(TAG, "acquire " + themeId + ": " + entry.users.size() + " users");
+        return entry.imageCache;
+    }
+
+    /**
+     * Release a cache acquired with {@link #acquire(String, Object)}.  When its last user releases it,
+     * the cache is cleared: users which still hold it get no more images from it.
+     */
+    public static synchronized void release(String themeId, Object user) {
+        Entry entry = sEntries.get(themeId);
+        if (entry == null || entry.users.remove(user) == null) {
+            Log.w(TAG, "release " + themeId + ": not acquired by " + user);
+        } else {
+            Log.v(TAG, "release " + themeId + ": " + entry.users.size() + " users");
+            if (entry.users.isEmpty()) {
+                sEntries.remove(themeId);
+                entry.imageCache.clearImageCache();
+            }
+        }
+        clearLeakedEntries();
+    }
+
+    /**
+     * Clear the caches whose users were all garbage collected without releasing them.
+     */
+    private static void clearLeakedEntries() {
+        Iterator<Map.Entry<String, Entry>> iterator = sEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getValue().users.isEmpty()) {
+                Log.w(TAG, "The image cache of theme " + entry.getKey() + " was never released");
+                iterator.remove();
+                entry.getValue().imageCache.clearImageCache();
+            }
+        }
+    }
+}
@@ -30,6 +30,8 @@ import ca.rmen.nounours.data.Theme;
 
 /**
  * Responsible for caching and freeing the image and sound resources needed by Nounours.
+ * The images come from the {@link ImageCacheRegistry}, so they are shared with the other
+ * Nounours instances of the process which display the same theme.
  */
 public class NounoursResourceCache {
     private static final String TAG = Constants.TAG + NounoursResourceCache.class.getSimpleName();
@@ -39,37 +41,60 @@ public class NounoursResourceCache {
 
     private final NounoursSettings mSettings;
 
-    private final ImageCache mImageCache;
     private final SoundCache mSoundCache;
 
+    // The shared cache we acquired from the registry, and the theme we acquired it for.
+    private volatile ImageCache mImageCache;
+    private String mImageCacheThemeId;
+
 
     public NounoursResourceCache(Context context,
                                          NounoursSettings settings,
-                                         ImageCache imageCache,
                                          SoundCache soundCache) {
         mContext = context;
         mUiHandler = new Handler();
         mSettings = settings;
-        mImageCache = imageCache;
         mSoundCache = soundCache;
     }
 
-    public NounoursResourceCache(Context context, NounoursSettings settings, ImageCache imageCache) {
-        this(context, settings, imageCache, null);
+    public NounoursResourceCache(Context context, NounoursSettings settings) {
+        this(context, settings, null);
     }
 
     public boolean loadImages(Theme theme, ImageCache.ImageCacheListener imageCacheListener) {
         Log.v(TAG, "loadImages, theme = " + theme);
-        return mImageCache.cacheImages(mContext, theme.getImages().values(), mUiHandler, imageCacheListener);
+        ImageCache imageCache;
+        synchronized (this) {
+            if (!theme.getId().equals(mImageCacheThemeId)) {
+                freeImages();
+                mImageCache = ImageCacheRegistry.acquire(theme.getId(), this);
+                mImageCacheThemeId = theme.getId();
+            }
+            imageCache = mImageCache;
+        }
+        return imageCache.cacheImages(mContext, theme.getImages().values(), mUiHandler, imageCacheListener);
     }
 
+    /**
+     * @return the bitmap for the given image, or null if the images of the theme haven't
+     * been loaded.
+     */
     public Bitmap getDrawableImage(Context context, Image image) {
-        return mImageCache.getDrawableImage(context, image);
+        ImageCache imageCache = mImageCache;
+        if (imageCache == null) return null;
+        return imageCache.getDrawableImage(context, image);
     }
 
-    public void freeImages() {
+    /**
+     * Release our reference to the images of the current theme.  They are only freed
+     * if no other Nounours instance uses them.
+     */
+    public synchronized void freeImages() {
         Log.v(TAG, "freeImages");
-        mImageCache.clearImageCache();
+        if (mImageCacheThemeId == null) return;
+        mImageCache = null;
+        ImageCacheRegistry.release(mImageCacheThemeId, this);
+        mImageCacheThemeId = null;
     }
 
     public boolean loadSounds(Theme theme) {
@@ -19,40 +19,198 @@
 
 package ca.rmen.nounours.android.common.nounours.cache;
 
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.SoundPool;
 import android.util.Log;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import ca.rmen.nounours.android.common.Constants;
+import ca.rmen.nounours.android.common.compat.SoundPoolCompat;
 import ca.rmen.nounours.data.Sound;
 import ca.rmen.nounours.data.Theme;
 
 /**
+ * Caches the sounds of a theme.
+ * <p/>
+ * The short sound effects are preloaded into a {@link SoundPool}, which decodes them, so that they
+ * can be played with a low latency, and overlap.  The long tracks, like the MIDI lullabies, must
+ * be streamed: their asset file descriptors are opened ahead of time.  Both are limited by a
+ * budget: the other sounds are opened when they're played.
+ * <p/>
+ * The latency of the first play of each sound is kept, and printed by {@link #dump(PrintWriter)}.
+ *
  * @author Carmen Alvarez
  */
 public class SoundCache {
     private static final String TAG = Constants.TAG + SoundCache.class.getSimpleName();
 
+    private static final int MAX_STREAMS = 4;
+    // The SoundPool decodes the sounds in memory: bigger files are streamed.
+    private static final long MAX_SOUND_POOL_FILE_SIZE = 128 * 1024;
+    // The total size of the files preloaded in the SoundPool.  Decoded, they take about ten times more memory.
+    private static final long SOUND_POOL_BUDGET = 256 * 1024;
+    // The number of file descriptors kept open for the streamed sounds.
+    private static final int MAX_OPEN_ASSET_FDS = 4;
+    private static final String SOUND_POOL_FILE_EXTENSION = ".ogg";
+
+    private final Context mContext;
     private final Map<String, String> mAssetPaths = new ConcurrentHashMap<>();
+    private final Map<String, Integer> mSoundPoolIds = new ConcurrentHashMap<>();
+    private final Set<Integer> mLoadedSoundPoolIds = Collections.synchronizedSet(new HashSet<Integer>());
+    private final Map<String, AssetFileDescriptor> mAssetFds = new ConcurrentHashMap<>();
+    private final Map<String, FirstPlay> mFirstPlays = new ConcurrentHashMap<>();
+    private volatile SoundPool mSoundPool;
+    private long mSoundPoolSize;
+
+    public SoundCache(Context context) {
+        mContext = context.getApplicationContext();
+    }
 
     public String getAssetPath(String soundId) {
         return mAssetPaths.get(soundId);
     }
 
-    public void cacheSounds(final Theme theme) {
+    /**
+     * @return the sound pool of the current theme, or null if the sounds aren't cached.
+     */
+    public SoundPool getSoundPool() {
+        return mSoundPool;
+    }
+
+    /**
+     * @return the id of the sound in the {@link #getSoundPool()}, or 0 if the sound must be
+     * streamed, or isn't loaded yet.
+     */
+    public int getSoundPoolId(String soundId) {
+        Integer soundPoolId = mSoundPoolIds.get(soundId);
+        if (soundPoolId == null || !mLoadedSoundPoolIds.contains(soundPoolId)) return 0;
+        return soundPoolId;
+    }
+
+    /**
+     * @return the file descriptor of the sound, opened by {@link #cacheSounds}, or null if the sound
+     * wasn't opened ahead of time.  It must not be closed by the caller.  It is closed by
+     * {@link #clearSoundCache()}.
+     */
+    public AssetFileDescriptor getAssetFileDescriptor(String soundId) {
+        return mAssetFds.get(soundId);
+    }
+
+    public synchronized void cacheSounds(final Theme theme) {
         Log.v(TAG, "cacheSounds for theme " + theme);
+        clearSoundCache();
+        final SoundPool soundPool = SoundPoolCompat.createSoundPool(MAX_STREAMS);
+        boolean hasLoadListener = SoundPoolCompat.setLoadListener(soundPool, new SoundPoolCompat.LoadListener() {
+            @Override
+            public void onLoadComplete(int sampleId, boolean success) {
+                // Ignore the sounds of a previous theme.
+                if (success && mSoundPool == soundPool) mLoadedSoundPoolIds.add(sampleId);
+            }
+        });
+        mSoundPool = soundPool;
         for (Sound sound : theme.getSounds().values()) {
             String assetPath = "themes/" + theme.getId() + "/" + sound.getFilename();
             mAssetPaths.put(sound.getId(), assetPath);
+            int soundPoolId = cacheSound(soundPool, sound, assetPath);
+            if (soundPoolId == 0) continue;
+            mSoundPoolIds.put(sound.getId(), soundPoolId);
+            if (!hasLoadListener) mLoadedSoundPoolIds.add(soundPoolId);
+        }
+        Log.v(TAG, "cached sounds: " + mSoundPoolIds.size() + " preloaded (" + mSoundPoolSize + " bytes), "
+                + mAssetFds.size() + " opened, " + mAssetPaths.size() + " total");
+    }
+
+    /**
+     * Preload the sound in the sound pool if it fits, or else keep its file descriptor open if we can.
+     *
+     * @return the id of the sound in the sound pool, or 0 if it must be streamed.
+     */
+    private int cacheSound(SoundPool soundPool, Sound sound, String assetPath) {
+        AssetFileDescriptor assetFd;
+        try {
+            assetFd = mContext.getAssets().openFd(assetPath);
+        } catch (IOException e) {
+            Log.v(TAG, "Couldn't open " + assetPath + ": " + e.getMessage(), e);
+            return 0;
+        }
+        long length = assetFd.getLength();
+        if (sound.getFilename().endsWith(SOUND_POOL_FILE_EXTENSION)
+                && length <= MAX_SOUND_POOL_FILE_SIZE
+                && mSoundPoolSize + length <= SOUND_POOL_BUDGET) {
+            int soundPoolId = soundPool.load(assetFd, 1);
+            close(assetFd);
+            if (soundPoolId != 0) mSoundPoolSize += length;
+            return soundPoolId;
+        }
+        if (mAssetFds.size() < MAX_OPEN_ASSET_FDS) {
+            mAssetFds.put(sound.getId(), assetFd);
+        } else {
+            close(assetFd);
+        }
+        return 0;
+    }
+
+    /**
+     * Remember the latency of the first play of the given sound, since the sounds were cached.
+     *
+     * @param requestTime the {@link System#nanoTime()} when the sound was requested.
+     * @param isPreloaded true if the sound was played from the sound pool.
+     */
+    public void onPlayStarted(String soundId, long requestTime, boolean isPreloaded) {
+        if (mFirstPlays.containsKey(soundId)) return;
+        mFirstPlays.put(soundId, new FirstPlay(System.nanoTime() - requestTime, isPreloaded));
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println("Sound first-play latency:");
+        for (Map.Entry<String, FirstPlay> entry : new TreeMap<>(mFirstPlays).entrySet()) {
+            FirstPlay firstPlay = entry.getValue();
+            writer.println(String.format("  %s: %.1f ms (%s)", entry.getKey(), firstPlay.latencyNs / 1000000f,
+                    firstPlay.isPreloaded ? "preloaded" : mAssetFds.containsKey(entry.getKey()) ? "opened" : "streamed"));
+        }
+    }
+
+    private static void close(AssetFileDescriptor assetFd) {
+        try {
+            assetFd.close();
+        } catch (IOException e) {
+            Log.v(TAG, "Couldn't close " + assetFd + ": " + e.getMessage(), e);
         }
-        Log.v(TAG, "cached sounds");
     }
 
-    public void clearSoundCache() {
+    public synchronized void clearSoundCache() {
         Log.v(TAG, "clearSoundCache");
         // clear the existing cache
         mAssetPaths.clear();
+        mSoundPoolIds.clear();
+        mLoadedSoundPoolIds.clear();
+        mFirstPlays.clear();
+        for (AssetFileDescriptor assetFd : mAssetFds.values()) close(assetFd);
+        mAssetFds.clear();
+        mSoundPoolSize = 0;
+        if (mSoundPool != null) {
+            mSoundPool.release();
+            mSoundPool = null;
+        }
+    }
+
+    private static class FirstPlay {
+        final long latencyNs;
+        final boolean isPreloaded;
+
+        FirstPlay(long latencyNs, boolean isPreloaded) {
+            this.latencyNs = latencyNs;
+            this.isPreloaded = isPreloaded;
+        }
     }
 
 }
@@ -0,0 +1,151 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.common.nounours.theme;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.rmen.nounours.android.common.Constants;
+import ca.rmen.nounours.android.common.nounours.AssetStreamLoader;
+import ca.rmen.nounours.common.R;
+import ca.rmen.nounours.data.Theme;
+import ca.rmen.nounours.io.StreamLoader;
+import ca.rmen.nounours.io.ThemeReader;
+
+/**
+ * Process-wide cache of the theme metadata, shared by the app, live wallpaper, Dream and watch
+ * face.
+ * <p/>
+ * The nounours.properties and themes files are read from the resources once.  The library
+ * still parses them in each instance's init: it has no other way to receive them.
+ * <p/>
+ * Each theme is parsed the first time it is requested, and the same {@link Theme} is then used
+ * by every Nounours instance of the process, from several threads. This is safe because a
+ * loaded theme is immutable:
+ * <ul>
+ * <li>Only {@link #getTheme(String)} calls {@link Theme#init(StreamLoader)}, under the lock of
+ * the theme, before returning it.</li>
+ * <li>The library only initializes themes which aren't loaded yet, so another instance calling
+ * init or useTheme doesn't parse a shared theme again: its init creates its own, unloaded,
+ * copies of the themes, which we replace with ours before its useTheme.</li>
+ * <li>After that, the library and the app only read the theme, its images and animations.</li>
+ * </ul>
+ * SharedThemeTest checks this against the library.
+ * <p/>
+ * The {@link ThemeIndex} of a theme is shared too, as long as an instance uses it.
+ */
+public final class ThemeCatalog {
+    private static final String TAG = Constants.TAG + ThemeCatalog.class.getSimpleName();
+
+    private static ThemeCatalog sInstance;
+
+    private final Context mContext;
+    private final StreamLoader mStreamLoader;
+    private final byte[] mPropertiesFile;
+    private final byte[] mThemesFile;
+    private final Map<String, Theme> mThemes;
+    // Weak: a memory-mapped index is unmapped once no instance uses it.
+    private final Map<String, WeakReference<ThemeIndex>> mThemeIndexes = new HashMap<>();
+
+    public static synchronized ThemeCatalog getInstance(Context context) throws IOException {
+        if (sInstance == null) sInstance = new ThemeCatalog(context.getApplicationContext());
+        return sInstance;
+    }
+
+    private ThemeCatalog(Context context) throws IOException {
+        Log.v(TAG, "Constructor");
+        mContext = context;
+        mStreamLoader = new AssetStreamLoader(context);
+        mPropertiesFile = readFully(context.getResources().openRawResource(R.raw.nounours));
+        mThemesFile = readFully(context.getResources().openRawResource(R.raw.themes));
+        ThemeReader themeReader = new ThemeReader(openThemesFile());
+        mThemes = Collections.unmodifiableMap(new HashMap<>(themeReader.getThemes()));
+    }
+
+    /**
+     * @return a new stream on the cached content of the nounours.properties file.
+     */
+    public InputStream openPropertiesFile() {
+        return new ByteArrayInputStream(mPropertiesFile);
+    }
+
+    /**
+     * @return a new stream on the cached content of the themes file.
+     */
+    public InputStream openThemesFile() {
+        return new ByteArrayInputStream(mThemesFile);
+    }
+
+    /**
+     * @return the theme with the given id, parsing its data files if this is the first time
+     * the theme is requested in this process. Returns null if there is no such theme.
+     */
+    public Theme getTheme(String themeId) throws IOException {
+        Theme theme = mThemes.get(themeId);
+        if (theme == null) return null;
+        // Lock on the theme itself: loading one theme doesn't block requests for the others.
+        synchronized (theme) {
+            if (!theme.isLoaded()) {
+                Log.v(TAG, "Loading theme " + themeId);
+                theme.init(mStreamLoader);
+            }
+        }
+        return theme;
+    }
+
+    /**
+     * @return the compiled index of the given theme. It is memory-mapped if no instance uses it
+     * yet, and released when no instance references it anymore.
+     */
+    public ThemeIndex getThemeIndex(String themeId) throws IOException {
+        synchronized (mThemeIndexes) {
+            WeakReference<ThemeIndex> themeIndexRef = mThemeIndexes.get(themeId);
+            ThemeIndex themeIndex = themeIndexRef == null ? null : themeIndexRef.get();
+            if (themeIndex == null) {
+                themeIndex = ThemeIndex.open(mContext, themeId);
+                mThemeIndexes.put(themeId, new WeakReference<>(themeIndex));
+            }
+            return themeIndex;
+        }
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+            }
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.common.nounours.theme;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of a theme compiled at build time into themes/&lt;id&gt;/theme.idx by
+ * ca.rmen.nounours.build.ThemeIndexCompiler (in buildSrc).
+ * <p/>
+ * The index only contains what the app looks up on its own, next to the theme which
+ * libnounours loads from the csv files: the features of each image, the adjacent images,
+ * and the orientation rules.  Images and features are referred to by their index in this
+ * file, and the relations between them are int-indexed tables.
+ * <p/>
+ * The tables are read from the buffer when they're queried: opening the index only walks it
+ * once, to find where each string, table and animation starts.  Strings are decoded on demand.
+ * <p/>
+ * File format (big-endian, as written by DataOutputStream):
+ * <pre>
+ * int magic ("NTI1"), int version
+ * int stringCount, stringCount * modified UTF-8 string
+ * int imageCount, imageCount * (int id)
+ * int featureCount, featureCount * (int id)
+ * int imageFeatureCount, imageFeatureCount * (int image, int feature, int x, int y), sorted by image
+ * int adjacentImageCount, adjacentImageCount * (int image, int feature, int adjacentImage)
+ * int orientationCount, orientationCount * (int image, float minYaw, float maxYaw,
+ *                                           float minPitch, float maxPitch, float minRoll, float maxRoll)
+ * </pre>
+ * Ids are indexes into the string pool.
+ */
+public final class ThemeIndex {
+
+    public static final String FILENAME = "theme.idx";
+
+    private static final int MAGIC = 0x4e544931;
+    private static final int VERSION = 2;
+
+    // The sizes of the records of each table, in bytes.
+    private static final int IMAGE_SIZE = 4;
+    private static final int FEATURE_SIZE = 4;
+    private static final int IMAGE_FEATURE_SIZE = 16;
+    private static final int ADJACENT_IMAGE_SIZE = 12;
+    private static final int ORIENTATION_SIZE = 28;
+
+    // Only read with absolute gets, which don't change the position: safe from any thread.
+    private final ByteBuffer mBuffer;
+
+    // The offset of each string of the pool.
+    private final int[] mStringOffsets;
+
+    // The offset of the first record, and the number of records, of each table.
+    private final int mImageOffset;
+    private final int mImageCount;
+    private final int mFeatureOffset;
+    private final int mFeatureCount;
+    private final int mImageFeatureOffset;
+    private final int mImageFeatureCount;
+    private final int mAdjacentImageOffset;
+    private final int mAdjacentImageCount;
+    private final int mOrientationOffset;
+    private final int mOrientationCount;
+
+    /**
+     * Memory-map the compiled index of the given theme, from the assets.
+     */
+    public static ThemeIndex open(Context context, String themeId) throws IOException {
+        AssetFileDescriptor assetFd = context.getAssets().openFd("themes/" + themeId + "/" + FILENAME);
+        FileInputStream is = assetFd.createInputStream();
+        try {
+            FileChannel channel = is.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, assetFd.getStartOffset(), assetFd.getLength());
+            return new ThemeIndex(buffer);
+        } finally {
+            is.close();
+            assetFd.close();
+        }
+    }
+
+    ThemeIndex(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        int offset = buffer.position();
+        try {
+            if (buffer.getInt(offset) != MAGIC) throw new IOException("Not a theme index");
+            int version = buffer.getInt(offset + 4);
+            if (version != VERSION) throw new IOException("Unsupported theme index version " + version);
+            offset += 8;
+
+            mStringOffsets = new int[buffer.getInt(offset)];
+            offset += 4;
+            for (int i = 0; i < mStringOffsets.length; i++) {
+                mStringOffsets[i] = offset;
+                offset += 2 + (buffer.getShort(offset) & 0xffff);
+            }
+
+            mImageCount = buffer.getInt(offset);
+            mImageOffset = offset + 4;
+            offset = mImageOffset + mImageCount * IMAGE_SIZE;
+
+            mFeatureCount = buffer.getInt(offset);
+            mFeatureOffset = offset + 4;
+            offset = mFeatureOffset + mFeatureCount * FEATURE_SIZE;
+
+            mImageFeatureCount = buffer.getInt(offset);
+            mImageFeatureOffset = offset + 4;
+            offset = mImageFeatureOffset + mImageFeatureCount * IMAGE_FEATURE_SIZE;
+
+            mAdjacentImageCount = buffer.getInt(offset);
+            mAdjacentImageOffset = offset + 4;
+            offset = mAdjacentImageOffset + mAdjacentImageCount * ADJACENT_IMAGE_SIZE;
+
+            mOrientationCount = buffer.getInt(offset);
+            mOrientationOffset = offset + 4;
+            offset = mOrientationOffset + mOrientationCount * ORIENTATION_SIZE;
+            if (offset > buffer.limit()) throw new IOException("Truncated theme index");
+        } catch (IndexOutOfBoundsException e) {
+            IOException exception = new IOException("Truncated theme index");
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private String getString(int string) {
+        return readUTF(mStringOffsets[string]);
+    }
+
+    /**
+     * Decode a string written by DataOutputStream.writeUTF: an unsigned short byte length,
+     * followed by modified UTF-8.
+     */
+    private String readUTF(int offset) {
+        int length = mBuffer.getShort(offset) & 0xffff;
+        char[] chars = new char[length];
+        int charCount = 0;
+        int position = offset + 2;
+        int end = position + length;
+        while (position < end) {
+            int b = mBuffer.get(position) & 0xff;
+            int size = getCharSize(b);
+            chars[charCount++] = decodeChar(position, size);
+            position += size;
+        }
+        return new String(chars, 0, charCount);
+    }
+
+    /**
+     * Compare a string of the pool with the given one, without decoding it.
+     */
+    private boolean stringEquals(int string, String value) {
+        int offset = mStringOffsets[string];
+        int position = offset + 2;
+        int end = position + (mBuffer.getShort(offset) & 0xffff);
+        int i = 0;
+        while (position < end) {
+            if (i == value.length()) return false;
+            int size = getCharSize(mBuffer.get(position) & 0xff);
+            if (decodeChar(position, size) != value.charAt(i++)) return false;
+            position += size;
+        }
+        return i == value.length();
+    }
+
+    private static int getCharSize(int firstByte) {
+        if (firstByte < 0x80) return 1;
+        if ((firstByte & 0xe0) == 0xc0) return 2;
+        if ((firstByte & 0xf0) == 0xe0) return 3;
+        throw new IllegalStateException("Malformed string in theme index");
+    }
+
+    private char decodeChar(int position, int size) {
+        int b = mBuffer.get(position) & 0xff;
+        if (size == 1) return (char) b;
+        if (size == 2) return (char) (((b & 0x1f) << 6) | (mBuffer.get(position + 1) & 0x3f));
+        return (char) (((b & 0x0f) << 12) | ((mBuffer.get(position + 1) & 0x3f) << 6) | (mBuffer.get(position + 2) & 0x3f));
+    }
+
+    public int getImageCount() {
+        return mImageCount;
+    }
+
+    /**
+     * This scans the image table: resolve the images once, when the theme is loaded, not per frame.
+     *
+     * @return the index of the image with the given id, or -1 if the theme has no such image.
+     */
+    public int getImageIndex(String imageId) {
+        for (int i = 0; i < mImageCount; i++) {
+            if (stringEquals(mBuffer.getInt(mImageOffset + i * IMAGE_SIZE), imageId)) return i;
+        }
+        return -1;
+    }
+
+    public String getImageId(int image) {
+        return getString(mBuffer.getInt(mImageOffset + image * IMAGE_SIZE));
+    }
+
+    public int getFeatureCount() {
+        return mFeatureCount;
+    }
+
+    /**
+     * @return the index of the feature with the given id, or -1 if the theme has no such feature.
+     */
+    public int getFeatureIndex(String featureId) {
+        for (int i = 0; i < mFeatureCount; i++) {
+            if (stringEquals(mBuffer.getInt(mFeatureOffset + i * FEATURE_SIZE), featureId)) return i;
+        }
+        return -1;
+    }
+
+    public String getFeatureId(int feature) {
+        return getString(mBuffer.getInt(mFeatureOffset + feature * FEATURE_SIZE));
+    }
+
+    /**
+     * @return the number of features placed on the given image.
+     */
+    public int getImageFeatureCount(int image) {
+        return getFirstImageFeature(image + 1) - getFirstImageFeature(image);
+    }
+
+    /**
+     * @param i between 0 and {@link #getImageFeatureCount(int)}
+     * @return the index of the i'th feature placed on the given image.
+     */
+    public int getImageFeature(int image, int i) {
+        return mBuffer.getInt(getImageFeatureOffset(image, i) + 4);
+    }
+
+    public int getImageFeatureX(int image, int i) {
+        return mBuffer.getInt(getImageFeatureOffset(image, i) + 8);
+    }
+
+    public int getImageFeatureY(int image, int i) {
+        return mBuffer.getInt(getImageFeatureOffset(image, i) + 12);
+    }
+
+    private int getImageFeatureOffset(int image, int i) {
+        return mImageFeatureOffset + (getFirstImageFeature(image) + i) * IMAGE_FEATURE_SIZE;
+    }
+
+    /**
+     * @return the first image feature record of the given image, or of the images after it:
+     * the records are sorted by image.
+     */
+    private int getFirstImageFeature(int image) {
+        int low = 0;
+        int high = mImageFeatureCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mBuffer.getInt(mImageFeatureOffset + middle * IMAGE_FEATURE_SIZE) < image) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    public int getAdjacentImageCount() {
+        return mAdjacentImageCount;
+    }
+
+    /**
+     * Dragging feature {@link #getAdjacentImageFeature(int)} from image
+     * {@link #getAdjacentImageSource(int)} may display image {@link #getAdjacentImageTarget(int)}.
+     */
+    public int getAdjacentImageSource(int i) {
+        return mBuffer.getInt(mAdjacentImageOffset + i * ADJACENT_IMAGE_SIZE);
+    }
+
+    public int getAdjacentImageFeature(int i) {
+        return mBuffer.getInt(mAdjacentImageOffset + i * ADJACENT_IMAGE_SIZE + 4);
+    }
+
+    public int getAdjacentImageTarget(int i) {
+        return mBuffer.getInt(mAdjacentImageOffset + i * ADJACENT_IMAGE_SIZE + 8);
+    }
+
+    /**
+     * @return the number of rules in orientationimage2.csv, in file order.
+     */
+    public int getOrientationRuleCount() {
+        return mOrientationCount;
+    }
+
+    public int getOrientationRuleImage(int rule) {
+        return mBuffer.getInt(mOrientationOffset + rule * ORIENTATION_SIZE);
+    }
+
+    public float getOrientationRuleMinYaw(int rule) {
+        return getOrientationRuleBound(rule, 0);
+    }
+
+    public float getOrientationRuleMaxYaw(int rule) {
+        return getOrientationRuleBound(rule, 1);
+    }
+
+    public float getOrientationRuleMinPitch(int rule) {
+        return getOrientationRuleBound(rule, 2);
+    }
+
+    public float getOrientationRuleMaxPitch(int rule) {
+        return getOrientationRuleBound(rule, 3);
+    }
+
+    public float getOrientationRuleMinRoll(int rule) {
+        return getOrientationRuleBound(rule, 4);
+    }
+
+    public float getOrientationRuleMaxRoll(int rule) {
+        return getOrientationRuleBound(rule, 5);
+    }
+
+    private float getOrientationRuleBound(int rule, int bound) {
+        return mBuffer.getFloat(mOrientationOffset + rule * ORIENTATION_SIZE + 4 + bound * 4);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.common.nounours.touch;
+
+import ca.rmen.nounours.android.common.nounours.theme.ThemeIndex;
+
+/**
+ * The images which can be displayed when a feature is dragged, compiled from the adjacent
+ * images of the theme.
+ * <p/>
+ * For each (image, feature) pair, the table lists the image itself and its adjacent images for
+ * this feature, with the position of the feature in each of them, in view coordinates.
+ * The image to display is the candidate whose feature is closest to the finger. Finding it
+ * is an array lookup followed by a few distance computations.
+ * <p/>
+ * AndroidNounours doesn't filter the move events with this table yet.  That first needs
+ * ImageTransitionTableTest to pass against the library: the table only gives the same results
+ * as the library's move handling if {@link ViewTransform} matches the library's hit-testing.
+ */
+public class ImageTransitionTable {
+    private final int mImageCount;
+    private final int mFeatureCount;
+
+    // The candidates of (image, feature) are at indexes start[image * featureCount + feature]
+    // (inclusive) to start[image * featureCount + feature + 1] (exclusive) of the other arrays.
+    private final int[] mStart;
+    private final int[] mImage;
+    private final float[] mX;
+    private final float[] mY;
+
+    public ImageTransitionTable(ThemeIndex themeIndex, ViewTransform viewTransform) {
+        mImageCount = themeIndex.getImageCount();
+        mFeatureCount = themeIndex.getFeatureCount();
+        int slotCount = mImageCount * mFeatureCount;
+        mStart = new int[slotCount + 1];
+
+        // First pass: count the candidates of each slot.
+        for (int image = 0; image < mImageCount; image++) {
+            for (int i = 0; i < themeIndex.getImageFeatureCount(image); i++) {
+                mStart[image * mFeatureCount + themeIndex.getImageFeature(image, i) + 1]++;
+            }
+        }
+        for (int i = 0; i < themeIndex.getAdjacentImageCount(); i++) {
+            if (isValidAdjacentImage(themeIndex, i)) {
+                mStart[themeIndex.getAdjacentImageSource(i) * mFeatureCount + themeIndex.getAdjacentImageFeature(i) + 1]++;
+            }
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            mStart[slot + 1] += mStart[slot];
+        }
+
+        // Second pass: fill the candidates.  The image itself comes first, so that it wins ties.
+        int candidateCount = mStart[slotCount];
+        mImage = new int[candidateCount];
+        mX = new float[candidateCount];
+        mY = new float[candidateCount];
+        int[] next = new int[slotCount];
+        System.arraycopy(mStart, 0, next, 0, slotCount);
+        for (int image = 0; image < mImageCount; image++) {
+            for (int i = 0; i < themeIndex.getImageFeatureCount(image); i++) {
+                int slot = image * mFeatureCount + themeIndex.getImageFeature(image, i);
+                add(next[slot]++, image, themeIndex, i, viewTransform);
+            }
+        }
+        for (int i = 0; i < themeIndex.getAdjacentImageCount(); i++) {
+            if (isValidAdjacentImage(themeIndex, i)) {
+                int feature = themeIndex.getAdjacentImageFeature(i);
+                int target = themeIndex.getAdjacentImageTarget(i);
+                int slot = themeIndex.getAdjacentImageSource(i) * mFeatureCount + feature;
+                add(next[slot]++, target, themeIndex, indexOfFeature(themeIndex, target, feature), viewTransform);
+            }
+        }
+    }
+
+    /**
+     * @param image   the index of the displayed image
+     * @param feature the index of the dragged feature
+     * @param x       the x coordinate of the finger, in the view.
+     * @param y       the y coordinate of the finger, in the view.
+     * @return the index of the image to display: the given image, or one of its adjacent images for
+     * the feature. Returns -1 if the given image doesn't have the feature.
+     */
+    public int getClosestImage(int image, int feature, float x, float y) {
+        if (image < 0 || image >= mImageCount || feature < 0 || feature >= mFeatureCount) return -1;
+        int slot = image * mFeatureCount + feature;
+        int closestImage = -1;
+        float closestDistance = Float.MAX_VALUE;
+        for (int i = mStart[slot]; i < mStart[slot + 1]; i++) {
+            float dx = mX[i] - x;
+            float dy = mY[i] - y;
+            float distance = dx * dx + dy * dy;
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closestImage = mImage[i];
+            }
+        }
+        return closestImage;
+    }
+
+    private void add(int candidate, int image, ThemeIndex themeIndex, int imageFeature, ViewTransform viewTransform) {
+        mImage[candidate] = image;
+        mX[candidate] = viewTransform.toViewX(themeIndex.getImageFeatureX(image, imageFeature));
+        mY[candidate] = viewTransform.toViewY(themeIndex.getImageFeatureY(image, imageFeature));
+    }
+
+    /**
+     * An adjacent image is only useful if both images have the dragged feature.
+     */
+    private static boolean isValidAdjacentImage(ThemeIndex themeIndex, int i) {
+        int feature = themeIndex.getAdjacentImageFeature(i);
+        return indexOfFeature(themeIndex, themeIndex.getAdjacentImageSource(i), feature) >= 0
+                && indexOfFeature(themeIndex, themeIndex.getAdjacentImageTarget(i), feature) >= 0;
+    }
+
+    private static int indexOfFeature(ThemeIndex themeIndex, int image, int feature) {
+        for (int i = 0; i < themeIndex.getImageFeatureCount(image); i++) {
+            if (themeIndex.getImageFeature(image, i) == feature) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.rmen.nounours.android.common.nounours.touch;
+
+/**
+ * Transforms coordinates of the theme images into the coordinate space of the view, using the
+ * same scaling and centering as {@link ca.rmen.nounours.android.common.nounours.NounoursRenderer}.
+ */
+public class ViewTransform {
+    private final float mScale;
+    private final float mOffsetX;
+    private final float mOffsetY;
+
+    /**
+     * @param themeWidth  the width of the theme images, in pixels.
+     * @param themeHeight the height of the theme images, in pixels.
+     */
+    public ViewTransform(int themeWidth, int themeHeight, int viewWidth, int viewHeight) {
+        float scaleX = (float) viewWidth / themeWidth;
+        float scaleY = (float) viewHeight / themeHeight;
+        mScale = scaleX < scaleY ? scaleX : scaleY;
+        mOffsetX = viewWidth / 2 - mScale * (themeWidth / 2);
+        mOffsetY = viewHeight / 2 - mScale * (themeHeight / 2);
+    }
+
+    /**
+     * @return the x coordinate in the view of the given x coordinate in the theme images.
+     */
+    public float toViewX(int themeX) {
+        return mOffsetX + themeX * mScale;
+    }
+
+    /**
+     * @return the y coordinate in the view of the given y coordinate in the theme images.
+     */
+    public float toViewY(int themeY) {
+        return mOffsetY + themeY * mScale;
+    }
+}
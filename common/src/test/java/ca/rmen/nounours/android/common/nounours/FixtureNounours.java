@@ -0,0 +1,117 @@
+package ca.rmen.nounours.android.common.nounours;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+
+import ca.rmen.nounours.Nounours;
+import ca.rmen.nounours.NounoursAnimationHandler;
+import ca.rmen.nounours.data.Animation;
+import ca.rmen.nounours.data.Image;
+import ca.rmen.nounours.data.Theme;
+import ca.rmen.nounours.io.StreamLoader;
+
+/**
+ * A Nounours which reads a fixture theme from memory, and displays nothing, for tests.
+ * The theme files are given by name: "image.csv", "nounours.properties"...
+ */
+public class FixtureNounours extends Nounours {
+    public static final String THEME_ID = "0";
+
+    private static final String PROPERTIES = "fling.factor=1600\n"
+            + "fling.precision=5\n"
+            + "shake.factor=8\n"
+            + "drop.vibrate.duration=100\n"
+            + "vibrate.interval=100\n"
+            + "idle.time=3600000\n"
+            + "idle.ping.interval=3600000\n";
+    private static final String THEMES = "Id,Name,URL\n"
+            + THEME_ID + ",fixture,file:///fixture\n";
+
+    private final int mDeviceWidth;
+    private final int mDeviceHeight;
+    private final Theme mSharedTheme;
+
+    public FixtureNounours(Map<String, String> themeFiles, int deviceWidth, int deviceHeight) throws IOException {
+        this(themeFiles, deviceWidth, deviceHeight, null);
+    }
+
+    /**
+     * @param sharedTheme if not null, an already loaded theme to use instead of our own copy,
+     *                    like {@link AndroidNounours} does with the themes of the catalog.
+     */
+    public FixtureNounours(final Map<String, String> themeFiles, int deviceWidth, int deviceHeight, Theme sharedTheme) throws IOException {
+        mDeviceWidth = deviceWidth;
+        mDeviceHeight = deviceHeight;
+        mSharedTheme = sharedTheme;
+        StreamLoader streamLoader = new StreamLoader() {
+            @Override
+            public InputStream open(URI uri) {
+                String path = uri.getPath();
+                String content = themeFiles.get(path.substring(path.lastIndexOf('/') + 1));
+                return toStream(content == null ? "" : content);
+            }
+        };
+        init(streamLoader, new NoAnimationHandler(), new EmptySoundHandler(), new EmptyVibrateHandler(),
+                toStream(PROPERTIES), toStream(THEMES), THEME_ID);
+    }
+
+    private static InputStream toStream(String content) {
+        try {
+            return new ByteArrayInputStream(content.getBytes("UTF-8"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void useTheme(String id) {
+        if (mSharedTheme != null) getThemes().put(id, mSharedTheme);
+        super.useTheme(id);
+    }
+
+    @Override
+    protected int getDeviceWidth() {
+        return mDeviceWidth;
+    }
+
+    @Override
+    protected int getDeviceHeight() {
+        return mDeviceHeight;
+    }
+
+    @Override
+    protected void displayImage(Image image) {
+    }
+
+    @Override
+    protected void runTask(Runnable task) {
+        task.run();
+    }
+
+    @Override
+    protected boolean cacheResources() {
+        return true;
+    }
+
+    private static class NoAnimationHandler implements NounoursAnimationHandler {
+        @Override
+        public void addAnimation(Animation animation) {
+        }
+
+        @Override
+        public void stopAnimation() {
+        }
+
+        @Override
+        public boolean isAnimationRunning() {
+            return false;
+        }
+
+        @Override
+        public void doAnimation(Animation animation, boolean isDynamicAnimation) {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ca.rmen.nounours.android.common.nounours;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Replays the calls {@link TouchTracker} makes to the {@link InputLatencyTracer}.
+ */
+public class InputLatencyTracerTest {
+
+    @Test
+    public void testFlingThenRelease() {
+        InputLatencyTracer tracer = new InputLatencyTracer("test", true);
+        fling(tracer);
+        // The release displays its image right away.
+        long releaseTime = System.nanoTime();
+        tracer.onInput(InputLatencyTracer.INPUT_TOUCH, releaseTime);
+        tracer.onFramePresented();
+        tracer.onInputHandled(InputLatencyTracer.INPUT_TOUCH, releaseTime);
+
+        Assert.assertEquals(1, tracer.getCount(InputLatencyTracer.INPUT_TOUCH));
+        Assert.assertEquals(1, tracer.getCount(InputLatencyTracer.INPUT_FLING));
+    }
+
+    @Test
+    public void testFlingThenReleaseWithoutImage() {
+        InputLatencyTracer tracer = new InputLatencyTracer("test", true);
+        fling(tracer);
+        // The release doesn't change the image: only the fling animation presents a frame.
+        long releaseTime = System.nanoTime();
+        tracer.onInput(InputLatencyTracer.INPUT_TOUCH, releaseTime);
+        tracer.onInputHandled(InputLatencyTracer.INPUT_TOUCH, releaseTime);
+        tracer.onFramePresented();
+
+        Assert.assertEquals(0, tracer.getCount(InputLatencyTracer.INPUT_TOUCH));
+        Assert.assertEquals(1, tracer.getCount(InputLatencyTracer.INPUT_FLING));
+
+        // Later frames of the animation aren't attributed to any input.
+        tracer.onFramePresented();
+        Assert.assertEquals(1, tracer.getCount(InputLatencyTracer.INPUT_FLING));
+    }
+
+    @Test
+    public void testDisabled() {
+        InputLatencyTracer tracer = new InputLatencyTracer("test", false);
+        fling(tracer);
+        tracer.onFramePresented();
+        Assert.assertEquals(0, tracer.getCount(InputLatencyTracer.INPUT_FLING));
+    }
+
+    @Test
+    public void testDump() {
+        InputLatencyTracer tracer = new InputLatencyTracer("test", true);
+        fling(tracer);
+        tracer.onFramePresented();
+        StringWriter output = new StringWriter();
+        PrintWriter writer = new PrintWriter(output);
+        tracer.dump(writer);
+        writer.flush();
+        String dump = output.toString();
+        Assert.assertTrue(dump, dump.contains("test touch: 0 frames"));
+        Assert.assertTrue(dump, dump.contains("test fling: 1 frames"));
+        Assert.assertTrue(dump, dump.matches("(?s).*avg \\d+\\.\\d ms.*"));
+    }
+
+    private static void fling(InputLatencyTracer tracer) {
+        // The fling animation is displayed later, by the animation thread.
+        tracer.onInput(InputLatencyTracer.INPUT_FLING, System.nanoTime());
+    }
+}
@@ -0,0 +1,138 @@
+package ca.rmen.nounours.android.common.nounours.theme;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.rmen.nounours.android.common.nounours.FixtureNounours;
+import ca.rmen.nounours.data.Animation;
+import ca.rmen.nounours.data.AnimationImage;
+import ca.rmen.nounours.data.Feature;
+import ca.rmen.nounours.data.FlingAnimation;
+import ca.rmen.nounours.data.Image;
+import ca.rmen.nounours.data.ImageFeature;
+import ca.rmen.nounours.data.Theme;
+
+/**
+ * The {@link ThemeCatalog} shares one loaded {@link Theme} between all the Nounours instances
+ * of the process. Checks that the library never modifies a loaded theme: not when another
+ * instance initializes with it or switches to it, nor when the instances handle input.
+ */
+public class SharedThemeTest {
+
+    private static final Map<String, String> THEME_FILES = new HashMap<>();
+
+    static {
+        THEME_FILES.put("nounours.properties", "default.image=A\n"
+                + "help.image=A\n"
+                + "animation.shake=1\n"
+                + "animation.resume=1\n"
+                + "resolution.width=320\n"
+                + "resolution.height=480\n");
+        THEME_FILES.put("image.csv", "Id,Filename,OnRelease\n"
+                + "A,a.png,\n"
+                + "B,b.png,A\n"
+                + "C,c.png,\n");
+        THEME_FILES.put("feature.csv", "Id,Description\n"
+                + "Nose,Nose\n"
+                + "Hand,Hand\n");
+        THEME_FILES.put("imagefeatureassoc.csv", "ImageId,FeatureId,X,Y\n"
+                + "A,Nose,100,100\n"
+                + "A,Hand,50,300\n"
+                + "B,Nose,200,200\n"
+                + "C,Nose,100,20\n"
+                + "C,Hand,60,320\n");
+        THEME_FILES.put("adjacentimage.csv", "ImageId,FeatureId,AdjacentImageId\n"
+                + "A,Nose,B\n"
+                + "A,Nose,C\n"
+                + "A,Hand,C\n"
+                + "C,Nose,A\n");
+        THEME_FILES.put("animation.csv", "Id,Label,Interval,Repeat,Sequence,Visible,Vibrate,Sound\n"
+                + "1,wave,100,2,A;d=2.5;B;C,true,false,\n");
+        THEME_FILES.put("flinganimation.csv", "Id,X,Y,Width,Height,MinVelX,MinVelY,AnimationId,VariableSpeed\n"
+                + "1,0,0,320,480,100,0,1,true\n");
+        THEME_FILES.put("sound.csv", "Id,Filename\n");
+    }
+
+    @Test
+    public void testSharedThemeIsNotModified() throws IOException {
+        FixtureNounours nounours1 = new FixtureNounours(THEME_FILES, 320, 480);
+        Theme theme = nounours1.getCurrentTheme();
+        Assert.assertTrue(theme.isLoaded());
+        Map<String, Image> images = new HashMap<>(theme.getImages());
+        String before = describe(theme);
+
+        // Another instance starts with the shared theme, at another size, and switches to it again.
+        FixtureNounours nounours2 = new FixtureNounours(THEME_FILES, 641, 963, theme);
+        Assert.assertSame(theme, nounours2.getCurrentTheme());
+        nounours2.useTheme(FixtureNounours.THEME_ID);
+        Assert.assertSame(theme, nounours2.getCurrentTheme());
+
+        for (FixtureNounours nounours : new FixtureNounours[]{nounours1, nounours2}) {
+            nounours.onPress(100, 100);
+            nounours.onMove(200, 200);
+            nounours.onMove(100, 20);
+            nounours.onRelease();
+            nounours.onPress(50, 300);
+            nounours.onMove(60, 320);
+            nounours.onRelease();
+            nounours.onFling(10, 10, 5000, 0);
+            nounours.onShake();
+        }
+
+        Assert.assertEquals(before, describe(theme));
+        // The images weren't parsed again either: they're the same objects.
+        Assert.assertEquals(images.size(), theme.getImages().size());
+        for (Map.Entry<String, Image> image : images.entrySet()) {
+            Assert.assertSame(image.getValue(), theme.getImages().get(image.getKey()));
+        }
+    }
+
+    /**
+     * @return everything the library reads from a theme, in a stable order.
+     */
+    private static String describe(Theme theme) {
+        List<String> lines = new ArrayList<>();
+        lines.add("theme " + theme.getId() + " " + theme.getWidth() + "x" + theme.getHeight()
+                + " default=" + theme.getDefaultImage().getId()
+                + " help=" + theme.getHelpImage().getId()
+                + " shake=" + theme.getShakeAnimation().getId()
+                + " resume=" + theme.getResumeAnimation().getId());
+        for (Image image : theme.getImages().values()) {
+            lines.add("image " + image.getId() + " " + image.getFilename() + " onRelease=" + image.getOnReleaseImageId());
+            for (Feature feature : image.getFeatures()) {
+                ImageFeature imageFeature = image.getImageFeature(feature.getId());
+                List<String> adjacentImages = new ArrayList<>();
+                for (Image adjacentImage : image.getAdjacentImages(feature.getId())) {
+                    adjacentImages.add(adjacentImage.getId());
+                }
+                Collections.sort(adjacentImages);
+                lines.add("feature " + image.getId() + " " + feature.getId() + " "
+                        + imageFeature.getX() + "," + imageFeature.getY() + " -> " + adjacentImages);
+            }
+        }
+        for (Animation animation : theme.getAnimations().values()) {
+            StringBuilder line = new StringBuilder("animation " + animation.getId() + " " + animation.getLabel()
+                    + " interval=" + animation.getInterval() + " repeat=" + animation.getRepeat() + ":");
+            for (AnimationImage animationImage : animation.getImages()) {
+                line.append(' ').append(animationImage.getImage().getId()).append('/').append(animationImage.getDuration());
+            }
+            lines.add(line.toString());
+        }
+        for (FlingAnimation fling : theme.getFlingAnimations()) {
+            lines.add("fling " + fling.getX() + "," + fling.getY() + " " + fling.getWidth() + "x" + fling.getHeight()
+                    + " " + fling.getMinVelX() + "," + fling.getMinVelY()
+                    + " " + fling.getAnimationId() + " " + fling.isVariableSpeed());
+        }
+        Collections.sort(lines);
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) result.append(line).append('\n');
+        return result.toString();
+    }
+}
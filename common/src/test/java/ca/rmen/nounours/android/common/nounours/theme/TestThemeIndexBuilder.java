@@ -0,0 +1,93 @@
+package ca.rmen.nounours.android.common.nounours.theme;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.rmen.nounours.build.ThemeIndexCompiler;
+
+/**
+ * Writes the csv files of a theme, and compiles them with the {@link ThemeIndexCompiler}
+ * used by the build, for tests.
+ * Only images, features, image features and adjacent images are supported.
+ */
+public class TestThemeIndexBuilder {
+
+    private final List<String> mImages = new ArrayList<>();
+    private final List<String> mFeatures = new ArrayList<>();
+    private final StringBuilder mImageFeatures = new StringBuilder("ImageId,FeatureId,X,Y\n");
+    private final StringBuilder mAdjacentImages = new StringBuilder("ImageId,FeatureId,AdjacentImageId\n");
+
+    public int addImage(String id) {
+        mImages.add(id);
+        return mImages.size() - 1;
+    }
+
+    public int addFeature(String id) {
+        mFeatures.add(id);
+        return mFeatures.size() - 1;
+    }
+
+    public void addImageFeature(int image, int feature, int x, int y) {
+        mImageFeatures.append(mImages.get(image)).append(',').append(mFeatures.get(feature))
+                .append(',').append(x).append(',').append(y).append('\n');
+    }
+
+    public void addAdjacentImage(int image, int feature, int adjacentImage) {
+        mAdjacentImages.append(mImages.get(image)).append(',').append(mFeatures.get(feature))
+                .append(',').append(mImages.get(adjacentImage)).append('\n');
+    }
+
+    public ThemeIndex build() throws IOException {
+        File themeDir = createTempDir();
+        StringBuilder images = new StringBuilder("Id,Filename,OnRelease\n");
+        for (String image : mImages) images.append(image).append(',').append(image).append(".png,\n");
+        StringBuilder features = new StringBuilder("Id,Description\n");
+        for (String feature : mFeatures) features.append(feature).append(',').append(feature).append('\n');
+        write(new File(themeDir, "image.csv"), images.toString());
+        write(new File(themeDir, "feature.csv"), features.toString());
+        write(new File(themeDir, "imagefeatureassoc.csv"), mImageFeatures.toString());
+        write(new File(themeDir, "adjacentimage.csv"), mAdjacentImages.toString());
+        return compile(themeDir);
+    }
+
+    /**
+     * Compile the given theme folder, and read the index back.
+     */
+    static ThemeIndex compile(File themeDir) throws IOException {
+        File indexFile = File.createTempFile("theme", ".idx");
+        indexFile.deleteOnExit();
+        ThemeIndexCompiler.compile(themeDir, indexFile);
+        RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            file.readFully(bytes);
+            return new ThemeIndex(ByteBuffer.wrap(bytes));
+        } finally {
+            file.close();
+        }
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("theme", "");
+        if (!dir.delete() || !dir.mkdir()) throw new IOException("Couldn't create " + dir);
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+        file.deleteOnExit();
+    }
+}
@@ -0,0 +1,115 @@
+package ca.rmen.nounours.android.common.nounours.theme;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+
+public class ThemeIndexTest {
+
+    @Test
+    public void testLookups() throws IOException {
+        TestThemeIndexBuilder builder = new TestThemeIndexBuilder();
+        int image1 = builder.addImage("image1");
+        int image2 = builder.addImage("œil");
+        int image3 = builder.addImage("image3");
+        int feature1 = builder.addFeature("feature1");
+        int feature2 = builder.addFeature("feature2");
+        builder.addImageFeature(image1, feature1, 10, 11);
+        builder.addImageFeature(image1, feature2, 20, 21);
+        builder.addImageFeature(image3, feature2, 30, 31);
+        builder.addAdjacentImage(image1, feature2, image3);
+        ThemeIndex themeIndex = builder.build();
+
+        Assert.assertEquals(3, themeIndex.getImageCount());
+        Assert.assertEquals(image2, themeIndex.getImageIndex("œil"));
+        Assert.assertEquals("œil", themeIndex.getImageId(image2));
+        Assert.assertEquals(-1, themeIndex.getImageIndex("image"));
+        Assert.assertEquals(-1, themeIndex.getImageIndex("image10"));
+        Assert.assertEquals(feature2, themeIndex.getFeatureIndex("feature2"));
+        Assert.assertEquals("feature1", themeIndex.getFeatureId(feature1));
+
+        Assert.assertEquals(2, themeIndex.getImageFeatureCount(image1));
+        Assert.assertEquals(0, themeIndex.getImageFeatureCount(image2));
+        Assert.assertEquals(1, themeIndex.getImageFeatureCount(image3));
+        Assert.assertEquals(feature2, themeIndex.getImageFeature(image1, 1));
+        Assert.assertEquals(20, themeIndex.getImageFeatureX(image1, 1));
+        Assert.assertEquals(31, themeIndex.getImageFeatureY(image3, 0));
+
+        Assert.assertEquals(1, themeIndex.getAdjacentImageCount());
+        Assert.assertEquals(image1, themeIndex.getAdjacentImageSource(0));
+        Assert.assertEquals(feature2, themeIndex.getAdjacentImageFeature(0));
+        Assert.assertEquals(image3, themeIndex.getAdjacentImageTarget(0));
+        Assert.assertEquals(0, themeIndex.getOrientationRuleCount());
+    }
+
+    /**
+     * Compiles the theme of src/test/resources/themes/fixture, like the build does, and reads it back.
+     */
+    @Test
+    public void testCompileFixture() throws IOException, URISyntaxException {
+        File themeDir = new File(getClass().getResource("/themes/fixture/image.csv").toURI()).getParentFile();
+        ThemeIndex themeIndex = TestThemeIndexBuilder.compile(themeDir);
+
+        // String table: multi-byte characters, and "Nose" which is both an image and a feature id.
+        Assert.assertEquals(4, themeIndex.getImageCount());
+        Assert.assertEquals("Default", themeIndex.getImageId(0));
+        Assert.assertEquals("œil", themeIndex.getImageId(1));
+        Assert.assertEquals("日本", themeIndex.getImageId(2));
+        Assert.assertEquals("Nose", themeIndex.getImageId(3));
+        Assert.assertEquals(2, themeIndex.getImageIndex("日本"));
+        Assert.assertEquals(-1, themeIndex.getImageIndex("日"));
+        Assert.assertEquals(3, themeIndex.getImageIndex("Nose"));
+        Assert.assertEquals(2, themeIndex.getFeatureCount());
+        Assert.assertEquals("Nose", themeIndex.getFeatureId(0));
+        Assert.assertEquals(1, themeIndex.getFeatureIndex("LEar"));
+
+        // Image features: sorted by image, in file order within an image, unknown references dropped.
+        Assert.assertEquals(2, themeIndex.getImageFeatureCount(0));
+        Assert.assertEquals(0, themeIndex.getImageFeature(0, 0));
+        Assert.assertEquals(153, themeIndex.getImageFeatureX(0, 0));
+        Assert.assertEquals(192, themeIndex.getImageFeatureY(0, 0));
+        Assert.assertEquals(1, themeIndex.getImageFeature(0, 1));
+        Assert.assertEquals(67, themeIndex.getImageFeatureX(0, 1));
+        Assert.assertEquals(0, themeIndex.getImageFeatureCount(1));
+        Assert.assertEquals(1, themeIndex.getImageFeatureCount(2));
+        Assert.assertEquals(1, themeIndex.getImageFeature(2, 0));
+        Assert.assertEquals(31, themeIndex.getImageFeatureY(2, 0));
+        Assert.assertEquals(0, themeIndex.getImageFeatureCount(3));
+
+        Assert.assertEquals(2, themeIndex.getAdjacentImageCount());
+        Assert.assertEquals(0, themeIndex.getAdjacentImageSource(0));
+        Assert.assertEquals(0, themeIndex.getAdjacentImageFeature(0));
+        Assert.assertEquals(2, themeIndex.getAdjacentImageTarget(0));
+        Assert.assertEquals(1, themeIndex.getAdjacentImageSource(1));
+        Assert.assertEquals(0, themeIndex.getAdjacentImageTarget(1));
+
+        Assert.assertEquals(2, themeIndex.getOrientationRuleCount());
+        Assert.assertEquals(3, themeIndex.getOrientationRuleImage(0));
+        Assert.assertEquals(45f, themeIndex.getOrientationRuleMinPitch(0), 0f);
+        Assert.assertEquals(1, themeIndex.getOrientationRuleImage(1));
+        Assert.assertEquals(-180f, themeIndex.getOrientationRuleMinYaw(1), 0f);
+        Assert.assertEquals(180f, themeIndex.getOrientationRuleMaxYaw(1), 0f);
+        Assert.assertEquals(-30f, themeIndex.getOrientationRuleMinPitch(1), 0f);
+        Assert.assertEquals(30f, themeIndex.getOrientationRuleMaxPitch(1), 0f);
+        Assert.assertEquals(-75.5f, themeIndex.getOrientationRuleMinRoll(1), 0f);
+        Assert.assertEquals(-45f, themeIndex.getOrientationRuleMaxRoll(1), 0f);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        buffer.putInt(0x4e544931).putInt(2).putInt(5).flip();
+        new ThemeIndex(buffer);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedVersion() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        buffer.putInt(0x4e544931).putInt(1).putInt(0).flip();
+        new ThemeIndex(buffer);
+    }
+}
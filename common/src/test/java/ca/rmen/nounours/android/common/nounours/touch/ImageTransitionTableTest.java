@@ -0,0 +1,251 @@
+package ca.rmen.nounours.android.common.nounours.touch;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import ca.rmen.nounours.android.common.nounours.FixtureNounours;
+import ca.rmen.nounours.android.common.nounours.theme.TestThemeIndexBuilder;
+import ca.rmen.nounours.android.common.nounours.theme.ThemeIndex;
+import ca.rmen.nounours.data.Image;
+
+/**
+ * Checks that the transition table picks the same image as the library's own touch handling,
+ * on a generated fixture theme.
+ */
+public class ImageTransitionTableTest {
+
+    // Roughly the size of the default theme.
+    private static final int IMAGE_COUNT = 35;
+    private static final int FEATURE_COUNT = 7;
+    private static final int ADJACENT_IMAGES_PER_FEATURE = 3;
+    private static final int THEME_WIDTH = 320;
+    private static final int THEME_HEIGHT = 480;
+
+    // Features of an image are at least this far apart, in theme pixels, so that pressing on a
+    // feature selects it, even after the library's own rounding of scaled coordinates.
+    private static final int MIN_FEATURE_DISTANCE = 8;
+
+    private static final int MOVE_COUNT = 20000;
+    private static final int DRAG_COUNT = 2000;
+    private static final int MOVES_PER_DRAG = 50;
+    private static final int BENCHMARK_ROUNDS = 5;
+
+    private final Random mRandom = new Random(42);
+    private final int[][] mFeatureX = new int[IMAGE_COUNT][FEATURE_COUNT];
+    private final int[][] mFeatureY = new int[IMAGE_COUNT][FEATURE_COUNT];
+    private final Map<String, String> mThemeFiles = new HashMap<>();
+    private ThemeIndex mThemeIndex;
+
+    @Before
+    public void setUp() throws IOException {
+        TestThemeIndexBuilder builder = new TestThemeIndexBuilder();
+        StringBuilder imageCsv = new StringBuilder("Id,Filename,OnRelease\n");
+        StringBuilder featureCsv = new StringBuilder("Id,Description\n");
+        StringBuilder imageFeatureCsv = new StringBuilder("ImageId,FeatureId,X,Y\n");
+        StringBuilder adjacentImageCsv = new StringBuilder("ImageId,FeatureId,AdjacentImageId\n");
+
+        for (int image = 0; image < IMAGE_COUNT; image++) {
+            builder.addImage("image" + image);
+            imageCsv.append("image").append(image).append(",image").append(image).append(".png\n");
+        }
+        for (int feature = 0; feature < FEATURE_COUNT; feature++) {
+            builder.addFeature("feature" + feature);
+            featureCsv.append("feature").append(feature).append(",feature ").append(feature).append('\n');
+        }
+        for (int image = 0; image < IMAGE_COUNT; image++) {
+            for (int feature = 0; feature < FEATURE_COUNT; feature++) {
+                int x, y;
+                do {
+                    x = mRandom.nextInt(THEME_WIDTH);
+                    y = mRandom.nextInt(THEME_HEIGHT);
+                } while (isNearFeature(image, feature, x, y));
+                mFeatureX[image][feature] = x;
+                mFeatureY[image][feature] = y;
+                builder.addImageFeature(image, feature, x, y);
+                imageFeatureCsv.append("image").append(image).append(",feature").append(feature)
+                        .append(',').append(x).append(',').append(y).append('\n');
+            }
+        }
+        for (int image = 0; image < IMAGE_COUNT; image++) {
+            for (int feature = 0; feature < FEATURE_COUNT; feature++) {
+                for (int i = 0; i < ADJACENT_IMAGES_PER_FEATURE; i++) {
+                    int adjacentImage = mRandom.nextInt(IMAGE_COUNT);
+                    builder.addAdjacentImage(image, feature, adjacentImage);
+                    adjacentImageCsv.append("image").append(image).append(",feature").append(feature)
+                            .append(",image").append(adjacentImage).append('\n');
+                }
+            }
+        }
+        mThemeFiles.put("image.csv", imageCsv.toString());
+        mThemeFiles.put("feature.csv", featureCsv.toString());
+        mThemeFiles.put("imagefeatureassoc.csv", imageFeatureCsv.toString());
+        mThemeFiles.put("adjacentimage.csv", adjacentImageCsv.toString());
+        mThemeFiles.put("animation.csv", "Id,Label,Interval,Repeat,Sequence,Visible,Vibrate,Sound\n");
+        mThemeFiles.put("flinganimation.csv", "Id,X,Y,Width,Height,MinVelX,MinVelY,AnimationId,VariableSpeed\n");
+        mThemeFiles.put("sound.csv", "Id,Filename\n");
+        mThemeFiles.put("nounours.properties", "default.image=image0\n"
+                + "help.image=image0\n"
+                + "resolution.width=" + THEME_WIDTH + "\n"
+                + "resolution.height=" + THEME_HEIGHT + "\n");
+
+        mThemeIndex = builder.build();
+    }
+
+    private boolean isNearFeature(int image, int featureCount, int x, int y) {
+        for (int feature = 0; feature < featureCount; feature++) {
+            if (Math.abs(mFeatureX[image][feature] - x) < MIN_FEATURE_DISTANCE
+                    && Math.abs(mFeatureY[image][feature] - y) < MIN_FEATURE_DISTANCE) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Same size as the theme: view coordinates are theme coordinates.
+     */
+    @Test
+    public void testClosestImageMatchesLibrary() throws IOException {
+        checkClosestImageMatchesLibrary(THEME_WIDTH, THEME_HEIGHT);
+    }
+
+    /**
+     * Scaled by about 2.003 on both axes, with odd sizes.
+     */
+    @Test
+    public void testClosestImageMatchesLibraryScaled() throws IOException {
+        checkClosestImageMatchesLibrary(641, 963);
+    }
+
+    /**
+     * Wider than the theme: scaled by the height, with bars on the left and right.
+     */
+    @Test
+    public void testClosestImageMatchesLibraryLetterboxedHorizontally() throws IOException {
+        checkClosestImageMatchesLibrary(1001, 487);
+    }
+
+    /**
+     * Taller than the theme: scaled by the width, with bars above and below.
+     */
+    @Test
+    public void testClosestImageMatchesLibraryLetterboxedVertically() throws IOException {
+        checkClosestImageMatchesLibrary(333, 999);
+    }
+
+    /**
+     * Presses on a random feature of a random image, and moves to a random point of the view.
+     * The library must display the image found by the transition table.
+     */
+    private void checkClosestImageMatchesLibrary(int viewWidth, int viewHeight) throws IOException {
+        ViewTransform viewTransform = new ViewTransform(THEME_WIDTH, THEME_HEIGHT, viewWidth, viewHeight);
+        ImageTransitionTable imageTransitionTable = new ImageTransitionTable(mThemeIndex, viewTransform);
+        FixtureNounours nounours = new FixtureNounours(mThemeFiles, viewWidth, viewHeight);
+        Map<String, Image> images = nounours.getCurrentTheme().getImages();
+        for (int i = 0; i < MOVE_COUNT; i++) {
+            int image = mRandom.nextInt(IMAGE_COUNT);
+            int feature = mRandom.nextInt(FEATURE_COUNT);
+            int pressX = Math.round(viewTransform.toViewX(mFeatureX[image][feature]));
+            int pressY = Math.round(viewTransform.toViewY(mFeatureY[image][feature]));
+            int moveX = mRandom.nextInt(viewWidth);
+            int moveY = mRandom.nextInt(viewHeight);
+
+            int expected = imageTransitionTable.getClosestImage(image, feature, moveX, moveY);
+
+            nounours.setImage(images.get(mThemeIndex.getImageId(image)));
+            nounours.onPress(pressX, pressY);
+            nounours.onMove(moveX, moveY);
+            int actual = mThemeIndex.getImageIndex(nounours.getCurrentImage().getId());
+            nounours.onRelease();
+            Assert.assertEquals("Wrong image for move " + i + " in a " + viewWidth + "x" + viewHeight + " view",
+                    expected, actual);
+        }
+    }
+
+    /**
+     * Compares the cost of handling the move events of drags: with the library's onMove, and
+     * with the transition table.  Each drag presses on a feature and moves to random points of
+     * a scaled view.  Both must go through the same images.
+     */
+    @Test
+    public void benchmarkMoveHandling() throws IOException {
+        int viewWidth = 641;
+        int viewHeight = 963;
+        ViewTransform viewTransform = new ViewTransform(THEME_WIDTH, THEME_HEIGHT, viewWidth, viewHeight);
+        ImageTransitionTable imageTransitionTable = new ImageTransitionTable(mThemeIndex, viewTransform);
+        FixtureNounours nounours = new FixtureNounours(mThemeFiles, viewWidth, viewHeight);
+        Map<String, Image> images = nounours.getCurrentTheme().getImages();
+
+        int[] dragImage = new int[DRAG_COUNT];
+        int[] dragFeature = new int[DRAG_COUNT];
+        int[] moveX = new int[DRAG_COUNT * MOVES_PER_DRAG];
+        int[] moveY = new int[DRAG_COUNT * MOVES_PER_DRAG];
+        for (int drag = 0; drag < DRAG_COUNT; drag++) {
+            dragImage[drag] = mRandom.nextInt(IMAGE_COUNT);
+            dragFeature[drag] = mRandom.nextInt(FEATURE_COUNT);
+        }
+        for (int i = 0; i < moveX.length; i++) {
+            moveX[i] = mRandom.nextInt(viewWidth);
+            moveY[i] = mRandom.nextInt(viewHeight);
+        }
+
+        long bestLibrary = Long.MAX_VALUE;
+        long bestTable = Long.MAX_VALUE;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            // The presses and releases are not timed: only the moves.
+            long libraryTime = 0;
+            int[] libraryImages = new int[DRAG_COUNT];
+            for (int drag = 0; drag < DRAG_COUNT; drag++) {
+                int image = dragImage[drag];
+                int feature = dragFeature[drag];
+                nounours.setImage(images.get(mThemeIndex.getImageId(image)));
+                nounours.onPress(Math.round(viewTransform.toViewX(mFeatureX[image][feature])),
+                        Math.round(viewTransform.toViewY(mFeatureY[image][feature])));
+                long start = System.nanoTime();
+                for (int i = drag * MOVES_PER_DRAG; i < (drag + 1) * MOVES_PER_DRAG; i++) {
+                    nounours.onMove(moveX[i], moveY[i]);
+                }
+                libraryTime += System.nanoTime() - start;
+                libraryImages[drag] = mThemeIndex.getImageIndex(nounours.getCurrentImage().getId());
+                nounours.onRelease();
+            }
+            bestLibrary = Math.min(bestLibrary, libraryTime);
+
+            long start = System.nanoTime();
+            int[] tableImages = new int[DRAG_COUNT];
+            for (int drag = 0; drag < DRAG_COUNT; drag++) {
+                int image = dragImage[drag];
+                for (int i = drag * MOVES_PER_DRAG; i < (drag + 1) * MOVES_PER_DRAG; i++) {
+                    image = imageTransitionTable.getClosestImage(image, dragFeature[drag], moveX[i], moveY[i]);
+                }
+                tableImages[drag] = image;
+            }
+            bestTable = Math.min(bestTable, System.nanoTime() - start);
+            Assert.assertArrayEquals(libraryImages, tableImages);
+        }
+        System.out.println(String.format(Locale.US, "Move handling: library: %d ns/move, transition table: %d ns/move",
+                bestLibrary / moveX.length, bestTable / moveX.length));
+    }
+
+    @Test
+    public void testMissingFeature() throws IOException {
+        TestThemeIndexBuilder builder = new TestThemeIndexBuilder();
+        int image1 = builder.addImage("image1");
+        int image2 = builder.addImage("image2");
+        int feature1 = builder.addFeature("feature1");
+        int feature2 = builder.addFeature("feature2");
+        builder.addImageFeature(image1, feature1, 10, 10);
+        builder.addImageFeature(image2, feature2, 20, 20);
+        builder.addAdjacentImage(image1, feature1, image2);
+        ThemeIndex themeIndex = builder.build();
+        ImageTransitionTable table = new ImageTransitionTable(themeIndex, new ViewTransform(100, 100, 100, 100));
+        // image2 doesn't have feature1: we stay on image1.
+        Assert.assertEquals(image1, table.getClosestImage(image1, feature1, 20, 20));
+        Assert.assertEquals(-1, table.getClosestImage(image1, feature2, 20, 20));
+    }
+}
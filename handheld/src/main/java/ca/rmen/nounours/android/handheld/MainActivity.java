@@ -19,6 +19,7 @@
 
 package ca.rmen.nounours.android.handheld;
 
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.NotificationManager;
 import android.app.ProgressDialog;
@@ -26,7 +27,6 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.hardware.Sensor;
 import android.hardware.SensorManager;
 import android.media.AudioManager;
 import android.os.Build;
@@ -43,15 +43,17 @@ import android.view.View;
 import android.widget.ImageButton;
 import android.widget.Toast;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.Map;
 
 import ca.rmen.nounours.R;
 import ca.rmen.nounours.android.common.Constants;
 import ca.rmen.nounours.android.common.compat.ApiHelper;
 import ca.rmen.nounours.android.common.nounours.AndroidNounours;
+import ca.rmen.nounours.android.common.nounours.InputLatencyTracer;
 import ca.rmen.nounours.android.common.nounours.NounoursRenderer;
 import ca.rmen.nounours.android.common.nounours.ThemeLoadListener;
-import ca.rmen.nounours.android.common.nounours.cache.ImageCache;
 import ca.rmen.nounours.android.common.nounours.cache.NounoursResourceCache;
 import ca.rmen.nounours.android.common.nounours.cache.SoundCache;
 import ca.rmen.nounours.android.common.settings.NounoursSettings;
@@ -81,10 +83,8 @@ public class MainActivity extends Activity {
     private static final String FLAG_FULLSCREEN = "fullscreen";
 
     private AndroidNounours mNounours;
-    private SensorManager mSensorManager;
     private SensorListener mSensorListener;
-    private Sensor mAccelerometerSensor;
-    private Sensor mMagneticFieldSensor;
+    private SoundHandler mSoundHandler;
     private ImageButton mRecordButton;
     private ProgressDialog mProgressDialog;
     private FullScreenMode mFullScreenMode;
@@ -102,8 +102,9 @@ public class MainActivity extends Activity {
         setContentView(R.layout.main);
 
         boolean isOldEmulator = Build.DEVICE.startsWith("generic") && ApiHelper.getAPILevel() < 9;
+        SensorManager sensorManager = null;
         if (!isOldEmulator) {
-            mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
+            sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
         }
 
         mFullScreenMode = new FullScreenMode(this,
@@ -117,12 +118,11 @@ public class MainActivity extends Activity {
         final SurfaceView surfaceView = (SurfaceView) findViewById(R.id.surface_view);
         mRecordButton = (ImageButton) findViewById(R.id.btn_stop_recording);
         mRecordButton.setOnClickListener(mOnClickListener);
-        ImageCache imageCache = new ImageCache();
-        SoundCache soundCache = new SoundCache();
-        SoundHandler soundHandler = new SoundHandler(this, soundCache);
+        SoundCache soundCache = new SoundCache(this);
+        mSoundHandler = new SoundHandler(this, soundCache);
         VibrateHandler vibrateHandler = new VibrateHandler(this);
         NounoursSettings settings = SharedPreferenceSettings.getAppSettings(this);
-        NounoursResourceCache nounoursResources = new NounoursResourceCache(this, settings, imageCache, soundCache);
+        NounoursResourceCache nounoursResources = new NounoursResourceCache(this, settings, soundCache);
         NounoursRenderer renderer = new NounoursRenderer();
 
         mNounours = new AndroidNounours("APP",
@@ -132,20 +132,17 @@ public class MainActivity extends Activity {
                 surfaceView.getHolder(),
                 renderer,
                 nounoursResources,
-                soundHandler,
+                mSoundHandler,
                 vibrateHandler,
-                mListener);
+                mListener,
+                true);
 
         FlingDetector nounoursFlingDetector = new FlingDetector(mNounours);
-        if (mSensorManager != null) {
-            mAccelerometerSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-            mMagneticFieldSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-        }
 
         final GestureDetector gestureDetector = new GestureDetector(getApplicationContext(), nounoursFlingDetector);
         TouchListener touchListener = new TouchListener(mNounours, gestureDetector);
         surfaceView.setOnTouchListener(touchListener);
-        mSensorListener = new SensorListener(mNounours, getApplicationContext());
+        mSensorListener = new SensorListener(mNounours, getApplicationContext(), sensorManager);
 
         if (ApiHelper.getAPILevel() < 11) {
             Toast.makeText(this, R.string.toast_remindMenuButton, Toast.LENGTH_LONG).show();
@@ -187,9 +184,8 @@ public class MainActivity extends Activity {
         mNounours.reloadSettings();
         mNounours.doPing(true);
         Log.v(TAG, "onResume end");
-        if (mSensorManager != null && mSensorListener != null) {
-            mSensorManager.registerListener(mSensorListener, mAccelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
-            mSensorManager.registerListener(mSensorListener, mMagneticFieldSensor, SensorManager.SENSOR_DELAY_NORMAL);
+        if (mSensorListener != null) {
+            mSensorListener.register();
         }
         registerReceiver(mBroadcastReceiver, new IntentFilter(AnimationSaveService.ACTION_SAVE_ANIMATION));
     }
@@ -205,9 +201,7 @@ public class MainActivity extends Activity {
         super.onPause();
         mNounours.doPing(false);
         mNounours.stopSound();
-        if (mSensorManager != null) {
-            mSensorManager.unregisterListener(mSensorListener);
-        }
+        mSensorListener.unregister();
         unregisterReceiver(mBroadcastReceiver);
     }
 
@@ -255,17 +249,18 @@ public class MainActivity extends Activity {
         // Prevent changing the theme in the middle of the animation.
         if (mNounours != null && !isFullScreen) {
             Theme theme = mNounours.getCurrentTheme();
-            boolean nounoursIsBusy = mNounours.isAnimationRunning() || mNounours.isLoading();
+            boolean nounoursIsBusy = !mNounours.isReady() || mNounours.isAnimationRunning() || mNounours.isLoading();
             MenuItem animationMenu = menu.findItem(R.id.menu_animation);
             if (animationMenu != null) {
                 animationMenu.setEnabled(!nounoursIsBusy);
-                boolean hasAnimations = theme != null && !theme.getAnimations().isEmpty();
+                boolean hasAnimations = mNounours.isReady() && theme != null && !theme.getAnimations().isEmpty();
                 animationMenu.setVisible(hasAnimations);
                 if (hasAnimations) setupAnimationMenu(animationMenu.getSubMenu());
             }
             MenuItem recordingMenu = menu.findItem(R.id.menu_start_recording);
             if (recordingMenu != null) {
-                recordingMenu.setEnabled(FileUtil.isSdPresent() && !mNounours.getNounoursRecorder().isRecording());
+                recordingMenu.setEnabled(mNounours.isReady() && FileUtil.isSdPresent()
+                        && !mNounours.getNounoursRecorder().isRecording());
             }
         }
         return super.onPrepareOptionsMenu(menu);
@@ -284,12 +279,12 @@ public class MainActivity extends Activity {
         }
         // Show the help
         else if (menuItem.getItemId() == R.id.menu_help) {
-            mNounours.onHelp();
+            if (mNounours.isReady()) mNounours.onHelp();
             return true;
         }
         // The user picked the random animation
         else if (menuItem.getItemId() == R.id.menu_random_animation) {
-            mNounours.doRandomAnimation();
+            if (mNounours.isReady()) mNounours.doRandomAnimation();
             return true;
         } else if (menuItem.getItemId() == R.id.menu_start_recording) {
             startRecording();
@@ -304,15 +299,15 @@ public class MainActivity extends Activity {
             return true;
         }
         // Show an animation or change the theme.
-        else {
+        else if (mNounours.isReady()) {
             final Map<String, Animation> animations = mNounours.getAnimations();
             final Animation animation = animations.get("" + menuItem.getItemId());
             if (animation != null) {
                 mNounours.doAnimation(animation);
                 return true;
             }
-            return super.onOptionsItemSelected(menuItem);
         }
+        return super.onOptionsItemSelected(menuItem);
     }
 
     @Override
@@ -332,9 +327,21 @@ public class MainActivity extends Activity {
     @Override
     protected void onDestroy() {
         mNounours.onDestroy();
+        mSoundHandler.release();
         super.onDestroy();
     }
 
+    /**
+     * adb shell dumpsys activity ca.rmen.nounours/.MainActivity
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        InputLatencyTracer.dumpAll(writer);
+        mSoundHandler.dump(writer);
+    }
+
     private void startRecording() {
         AnimationUtil.startAnimation(mRecordButton);
         mNounours.getNounoursRecorder().start();
@@ -22,6 +22,9 @@ package ca.rmen.nounours.android.handheld.compat;
 import android.annotation.TargetApi;
 import android.app.ActionBar;
 import android.app.Activity;
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.view.View;
 
 @TargetApi(14)
@@ -41,4 +44,23 @@ class Api14Helper {
         }
     }
 
+    static Object registerConfigurationListener(Context context, final Runnable listener) {
+        ComponentCallbacks componentCallbacks = new ComponentCallbacks() {
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                listener.run();
+            }
+
+            @Override
+            public void onLowMemory() {
+            }
+        };
+        context.getApplicationContext().registerComponentCallbacks(componentCallbacks);
+        return componentCallbacks;
+    }
+
+    static void unregisterConfigurationListener(Context context, Object componentCallbacks) {
+        context.getApplicationContext().unregisterComponentCallbacks((ComponentCallbacks) componentCallbacks);
+    }
+
 }
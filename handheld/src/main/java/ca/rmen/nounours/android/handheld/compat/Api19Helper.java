@@ -22,6 +22,10 @@ package ca.rmen.nounours.android.handheld.compat;
 import android.annotation.TargetApi;
 import android.app.ActionBar;
 import android.app.Activity;
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
 import android.view.View;
 
 @TargetApi(19)
@@ -49,4 +53,9 @@ class Api19Helper {
         }
     }
 
+    static boolean registerListener(SensorManager sensorManager, SensorEventListener listener, Sensor sensor,
+                                    int samplingPeriodUs, int maxReportLatencyUs, Handler handler) {
+        return sensorManager.registerListener(listener, sensor, samplingPeriodUs, maxReportLatencyUs, handler);
+    }
+
 }
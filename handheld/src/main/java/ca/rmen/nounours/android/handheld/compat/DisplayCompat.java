@@ -20,6 +20,7 @@
 package ca.rmen.nounours.android.handheld.compat;
 
 import android.content.Context;
+import android.os.Handler;
 import android.view.Display;
 import android.view.WindowManager;
 
@@ -38,4 +39,30 @@ public class DisplayCompat {
         //noinspection deprecation
         return display.getOrientation();
     }
+
+    /**
+     * Call the given listener when the rotation of the default display may have changed.
+     *
+     * @param handler the listener is called on the thread of this handler, on API level 17 and up.
+     *                On older devices, it is called on the main thread, on configuration changes.
+     * @return the registration to pass to {@link #unregisterRotationListener}, or null if the
+     * rotation changes can't be listened to on this device.
+     */
+    public static Object registerRotationListener(Context context, Runnable listener, Handler handler) {
+        if (ApiHelper.getAPILevel() >= 17) {
+            return Api17Helper.registerDisplayListener(context, listener, handler);
+        } else if (ApiHelper.getAPILevel() >= 14) {
+            return Api14Helper.registerConfigurationListener(context, listener);
+        }
+        return null;
+    }
+
+    public static void unregisterRotationListener(Context context, Object registration) {
+        if (registration == null) return;
+        if (ApiHelper.getAPILevel() >= 17) {
+            Api17Helper.unregisterDisplayListener(context, registration);
+        } else if (ApiHelper.getAPILevel() >= 14) {
+            Api14Helper.unregisterConfigurationListener(context, registration);
+        }
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.compat;
+
+import android.media.MediaPlayer;
+
+import ca.rmen.nounours.android.common.compat.ApiHelper;
+
+public class MediaPlayerCompat {
+
+    private MediaPlayerCompat() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the audio output started playing the
+     * current media, according to the timestamps it reports, or 0 if it's unknown.
+     */
+    public static long getPlaybackStartTime(MediaPlayer mediaPlayer) {
+        if (ApiHelper.getAPILevel() >= 23) {
+            return Api23Helper.getPlaybackStartTime(mediaPlayer);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.compat;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+
+import ca.rmen.nounours.android.common.compat.ApiHelper;
+
+public class SensorCompat {
+
+    private SensorCompat() {
+        // prevent instantiation
+    }
+
+    /**
+     * @param needsAbsoluteYaw true if the yaw must be relative to the magnetic north.  If false, the
+     *                         game rotation vector, which doesn't use the magnetometer, is preferred.
+     * @return a rotation vector sensor, or null if the device doesn't have one.
+     */
+    @SuppressWarnings("InlinedApi")
+    public static Sensor getRotationVectorSensor(SensorManager sensorManager, boolean needsAbsoluteYaw) {
+        if (!needsAbsoluteYaw && ApiHelper.getAPILevel() >= 18) {
+            Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_GAME_ROTATION_VECTOR);
+            if (sensor != null) return sensor;
+        }
+        if (ApiHelper.getAPILevel() >= 9) {
+            return sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        }
+        return null;
+    }
+
+    /**
+     * Register for the sensor at the given sampling period.  On devices which support it, the sensor hub
+     * may hold the events for up to maxReportLatencyUs, and deliver them in batches.
+     *
+     * @param handler the events are delivered on the thread of this handler.
+     */
+    public static boolean registerListener(SensorManager sensorManager, SensorEventListener listener, Sensor sensor,
+                                           int samplingPeriodUs, int maxReportLatencyUs, Handler handler) {
+        if (ApiHelper.getAPILevel() >= 19) {
+            return Api19Helper.registerListener(sensorManager, listener, sensor, samplingPeriodUs, maxReportLatencyUs, handler);
+        }
+        return sensorManager.registerListener(listener, sensor, samplingPeriodUs, handler);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.compat;
+
+import android.os.Vibrator;
+
+import ca.rmen.nounours.android.common.compat.ApiHelper;
+
+public class VibratorCompat {
+
+    private VibratorCompat() {
+        // prevent instantiation
+    }
+
+    /**
+     * @param pattern the durations of the vibration, alternately off and on, starting with off.
+     * @return the waveform to give to {@link #vibrate(Vibrator, Object)}: a VibrationEffect on
+     * API level 26 and up, or the pattern itself.
+     */
+    public static Object createWaveform(long[] pattern) {
+        if (ApiHelper.getAPILevel() >= 26) {
+            return Api26Helper.createWaveform(pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Play the waveform once.
+     *
+     * @param waveform created by {@link #createWaveform(long[])}.
+     */
+    public static void vibrate(Vibrator vibrator, Object waveform) {
+        if (ApiHelper.getAPILevel() >= 26) {
+            Api26Helper.vibrate(vibrator, waveform);
+        } else {
+            vibrator.vibrate((long[]) waveform, -1);
+        }
+    }
+}
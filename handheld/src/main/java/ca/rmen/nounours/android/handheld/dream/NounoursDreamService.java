@@ -20,7 +20,6 @@ package ca.rmen.nounours.android.handheld.dream;
 
 
 import android.annotation.TargetApi;
-import android.hardware.Sensor;
 import android.hardware.SensorManager;
 import android.os.Build;
 import android.os.Handler;
@@ -29,13 +28,16 @@ import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.SurfaceView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import ca.rmen.nounours.R;
 import ca.rmen.nounours.android.common.nounours.AndroidNounours;
 import ca.rmen.nounours.android.common.nounours.EmptySoundHandler;
 import ca.rmen.nounours.android.common.nounours.EmptyVibrateHandler;
+import ca.rmen.nounours.android.common.nounours.InputLatencyTracer;
 import ca.rmen.nounours.android.common.nounours.NounoursRenderer;
 import ca.rmen.nounours.android.common.nounours.ThemeLoadListener;
-import ca.rmen.nounours.android.common.nounours.cache.ImageCache;
 import ca.rmen.nounours.android.common.nounours.cache.NounoursResourceCache;
 import ca.rmen.nounours.android.common.settings.NounoursSettings;
 import ca.rmen.nounours.android.handheld.nounours.FlingDetector;
@@ -47,10 +49,8 @@ import ca.rmen.nounours.android.handheld.settings.SharedPreferenceSettings;
 public class NounoursDreamService extends DreamService {
     private AndroidNounours mNounours;
     private SensorListener mSensorListener;
-    private SensorManager mSensorManager;
-    private Sensor mAccelerometerSensor;
-    private Sensor mMagneticFieldSensor;
     private TouchListener mTouchListener;
+    private boolean mIsDreaming;
 
     @Override
     public void onAttachedToWindow() {
@@ -67,21 +67,21 @@ public class NounoursDreamService extends DreamService {
                 settings,
                 surfaceView.getHolder(),
                 new NounoursRenderer(),
-                new NounoursResourceCache(this, settings, new ImageCache()),
+                new NounoursResourceCache(this, settings),
                 new EmptySoundHandler(),
                 new EmptyVibrateHandler(),
-                mListener);
+                mListener,
+                true);
         FlingDetector nounoursFlingDetector = new FlingDetector(mNounours);
         final GestureDetector gestureDetector = new GestureDetector(this, nounoursFlingDetector);
-        mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        mAccelerometerSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        mMagneticFieldSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-        mSensorListener = new SensorListener(mNounours, this);
+        SensorManager sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
+        mSensorListener = new SensorListener(mNounours, this, sensorManager);
         mTouchListener = new TouchListener(mNounours, gestureDetector);
     }
 
     @Override
     public void onDetachedFromWindow() {
+        mSensorListener.unregister();
         mNounours.onDestroy();
         super.onDetachedFromWindow();
     }
@@ -89,11 +89,9 @@ public class NounoursDreamService extends DreamService {
     @Override
     public void onDreamingStarted() {
         super.onDreamingStarted();
+        mIsDreaming = true;
         if(!mNounours.isLoading()) {
-            if (mSensorManager != null) {
-                mSensorManager.registerListener(mSensorListener, mAccelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
-                mSensorManager.registerListener(mSensorListener, mMagneticFieldSensor, SensorManager.SENSOR_DELAY_NORMAL);
-            }
+            mSensorListener.register();
         }
         mNounours.reloadSettings();
         mNounours.doPing(true);
@@ -101,9 +99,8 @@ public class NounoursDreamService extends DreamService {
 
     @Override
     public void onDreamingStopped() {
-        if (mSensorManager != null) {
-            mSensorManager.unregisterListener(mSensorListener);
-        }
+        mIsDreaming = false;
+        mSensorListener.unregister();
         mNounours.doPing(false);
         super.onDreamingStopped();
     }
@@ -115,6 +112,12 @@ public class NounoursDreamService extends DreamService {
         return false;
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        InputLatencyTracer.dumpAll(writer);
+    }
+
     private final ThemeLoadListener mListener = new ThemeLoadListener() {
         @Override
         public void onThemeLoadStart(int max, String message) {
@@ -126,11 +129,9 @@ public class NounoursDreamService extends DreamService {
 
         @Override
         public void onThemeLoadComplete() {
-            if (mSensorManager != null) {
-                mSensorListener.rereadOrientationFile(getApplicationContext());
-                mSensorManager.registerListener(mSensorListener, mAccelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
-                mSensorManager.registerListener(mSensorListener, mMagneticFieldSensor, SensorManager.SENSOR_DELAY_NORMAL);
-            }
+            mSensorListener.rereadOrientationFile(getApplicationContext());
+            // The theme may finish loading before the dream starts, or after it stops.
+            if (mIsDreaming) mSensorListener.register();
         }
     };
 }
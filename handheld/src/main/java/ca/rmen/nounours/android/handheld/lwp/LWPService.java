@@ -21,7 +21,6 @@ package ca.rmen.nounours.android.handheld.lwp;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.hardware.Sensor;
 import android.hardware.SensorManager;
 import android.os.Build;
 import android.os.Handler;
@@ -31,13 +30,16 @@ import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import ca.rmen.nounours.android.common.compat.ApiHelper;
 import ca.rmen.nounours.android.common.nounours.AndroidNounours;
 import ca.rmen.nounours.android.common.nounours.EmptySoundHandler;
 import ca.rmen.nounours.android.common.nounours.EmptyVibrateHandler;
+import ca.rmen.nounours.android.common.nounours.InputLatencyTracer;
 import ca.rmen.nounours.android.common.nounours.NounoursRenderer;
 import ca.rmen.nounours.android.common.nounours.ThemeLoadListener;
-import ca.rmen.nounours.android.common.nounours.cache.ImageCache;
 import ca.rmen.nounours.android.common.nounours.cache.NounoursResourceCache;
 import ca.rmen.nounours.android.common.settings.NounoursSettings;
 import ca.rmen.nounours.android.handheld.nounours.FlingDetector;
@@ -53,14 +55,17 @@ public class LWPService extends WallpaperService {
         return new NounoursLWPEngine();
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        InputLatencyTracer.dumpAll(writer);
+    }
+
     class NounoursLWPEngine extends Engine implements SharedPreferences.OnSharedPreferenceChangeListener {
 
         private boolean mWasPaused = false;
         private AndroidNounours mNounours = null;
         private SensorListener mSensorListener;
-        private SensorManager mSensorManager;
-        private Sensor mAccelerometerSensor;
-        private Sensor mMagneticFieldSensor;
         private TouchListener mTouchListener;
 
         @Override
@@ -76,18 +81,17 @@ public class LWPService extends WallpaperService {
                     settings,
                     getSurfaceHolder(),
                     new NounoursRenderer(),
-                    new NounoursResourceCache(context, settings, new ImageCache()),
+                    new NounoursResourceCache(context, settings),
                     new EmptySoundHandler(),
                     new EmptyVibrateHandler(),
-                    mListener);
+                    mListener,
+                    true);
             FlingDetector nounoursFlingDetector = new FlingDetector(mNounours);
             final GestureDetector gestureDetector = new GestureDetector(context, nounoursFlingDetector);
             boolean isOldEmulator = Build.DEVICE.startsWith("generic") && ApiHelper.getAPILevel() < 9;
             if (!isOldEmulator) {
-                mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-                mAccelerometerSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-                mMagneticFieldSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-                mSensorListener = new SensorListener(mNounours, context);
+                SensorManager sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
+                mSensorListener = new SensorListener(mNounours, context, sensorManager);
             }
             mTouchListener = new TouchListener(mNounours, gestureDetector);
             final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(LWPService.this);
@@ -105,9 +109,8 @@ public class LWPService extends WallpaperService {
         public void onVisibilityChanged(boolean visible) {
             if (visible) {
                 if(!mNounours.isLoading()) {
-                    if (mSensorManager != null) {
-                        mSensorManager.registerListener(mSensorListener, mAccelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
-                        mSensorManager.registerListener(mSensorListener, mMagneticFieldSensor, SensorManager.SENSOR_DELAY_NORMAL);
+                    if (mSensorListener != null) {
+                        mSensorListener.register();
                     }
                 }
                 mNounours.reloadSettings();
@@ -118,8 +121,8 @@ public class LWPService extends WallpaperService {
                 mWasPaused = false;
 
             } else {
-                if (mSensorManager != null) {
-                    mSensorManager.unregisterListener(mSensorListener);
+                if (mSensorListener != null) {
+                    mSensorListener.unregister();
                 }
                 mWasPaused = true;
                 mNounours.doPing(false);
@@ -158,10 +161,9 @@ public class LWPService extends WallpaperService {
 
             @Override
             public void onThemeLoadComplete() {
-                if (mSensorManager != null) {
+                if (mSensorListener != null) {
                     mSensorListener.rereadOrientationFile(getApplicationContext());
-                    mSensorManager.registerListener(mSensorListener, mAccelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
-                    mSensorManager.registerListener(mSensorListener, mMagneticFieldSensor, SensorManager.SENSOR_DELAY_NORMAL);
+                    if (isVisible()) mSensorListener.register();
                 }
             }
         };
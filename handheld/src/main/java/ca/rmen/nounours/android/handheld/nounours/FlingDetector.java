@@ -22,7 +22,7 @@ package ca.rmen.nounours.android.handheld.nounours;
 import android.view.GestureDetector.SimpleOnGestureListener;
 import android.view.MotionEvent;
 
-import ca.rmen.nounours.Nounours;
+import ca.rmen.nounours.android.common.nounours.AndroidNounours;
 
 /**
  * Manages fling event for Nounours on the Android devices.
@@ -31,15 +31,16 @@ import ca.rmen.nounours.Nounours;
  */
 public class FlingDetector extends SimpleOnGestureListener {
 
-    private final Nounours mNounours;
+    private final AndroidNounours mNounours;
 
-    public FlingDetector(Nounours nounours) {
+    public FlingDetector(AndroidNounours nounours) {
         mNounours = nounours;
     }
 
     @Override
     public boolean onFling(final MotionEvent e1, final MotionEvent e2, final float velocityX, final float velocityY) {
-        mNounours.onFling((int) e1.getX(), (int) e1.getY(), velocityX, velocityY);
+        if (!mNounours.isReady()) return true;
+        mNounours.getTouchTracker().onFling((int) e1.getX(), (int) e1.getY(), velocityX, velocityY);
         return true;
     }
 
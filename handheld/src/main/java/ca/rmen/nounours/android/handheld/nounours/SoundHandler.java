@@ -22,33 +22,83 @@ package ca.rmen.nounours.android.handheld.nounours;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.media.MediaPlayer;
+import android.media.SoundPool;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.Log;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 
 import ca.rmen.nounours.NounoursSoundHandler;
 import ca.rmen.nounours.android.common.Constants;
+import ca.rmen.nounours.android.common.nounours.SoundClock;
 import ca.rmen.nounours.android.common.nounours.cache.SoundCache;
+import ca.rmen.nounours.android.handheld.compat.MediaPlayerCompat;
 
 /**
  * Manages sound effects and music for Nounours on the Android device.
+ * <p/>
+ * The sound effects preloaded by the {@link SoundCache} are played from its {@link SoundPool}:
+ * they start right away, and may overlap.  The other sounds are streamed by a {@link MediaPlayer},
+ * prepared asynchronously on an audio thread: the callers never wait for the sound.  A request to
+ * stream a sound which is already being prepared is ignored, and a request which hasn't started
+ * yet is superseded by the next one.
+ * <p/>
+ * As a {@link SoundClock}, it reports when the last requested sound started: when it was given to
+ * the sound pool, or when the media player started, refined by the timestamps reported by the
+ * audio output on API level 23 and up.
  *
  * @author Carmen Alvarez
  */
-public class SoundHandler implements NounoursSoundHandler {
+public class SoundHandler implements NounoursSoundHandler, SoundClock {
     private static final String TAG = Constants.TAG + SoundHandler.class.getSimpleName();
 
+    // The streams of the sound pool we may have to stop or mute.
+    private static final int MAX_TRACKED_STREAMS = 8;
+    // How often, and how many times, we ask the media player when the audio output started playing.
+    private static final long TIMESTAMP_POLL_INTERVAL_MS = 20;
+    private static final int MAX_TIMESTAMP_POLLS = 10;
+
     private final Context mContext;
     private final SoundCache mSoundCache;
-    private boolean mSoundEnabled = true;
-    private final MediaPlayer mMediaPlayer;
+    private volatile boolean mSoundEnabled = true;
+    private final int[] mStreamIds = new int[MAX_TRACKED_STREAMS];
+    private int mNextStreamIndex;
+
+    private final Handler mAudioHandler;
+    // Guarded by this: the sound to stream next, and the sound being prepared, with the
+    // System.nanoTime() when they were requested.
+    private String mPendingSoundId;
+    private long mPendingRequestTime;
+    private String mPreparingSoundId;
+    private long mPreparingRequestTime;
+    private boolean mIsStreamScheduled;
+    // Guarded by this: the last requested sound, and its SoundClock start time.
+    private String mClockSoundId;
+    private long mClockStartTime = START_TIME_NONE;
 
+    // Only accessed by the audio thread.
+    private MediaPlayer mMediaPlayer;
+    private String mPlayingSoundId;
+    private int mTimestampPollCount;
 
     public SoundHandler(Context context, SoundCache soundCache) {
         mContext = context;
         mSoundCache = soundCache;
-        mMediaPlayer = new MediaPlayer();
-        mMediaPlayer.setOnErrorListener(new MediaPlayerErrorListener());
+        HandlerThread audioThread = new HandlerThread(TAG);
+        audioThread.start();
+        mAudioHandler = new Handler(audioThread.getLooper());
+        mAudioHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // The media player calls its listeners on the thread which created it.
+                mMediaPlayer = new MediaPlayer();
+                mMediaPlayer.setOnPreparedListener(mOnPreparedListener);
+                mMediaPlayer.setOnErrorListener(new MediaPlayerErrorListener());
+            }
+        });
     }
 
     /**
@@ -57,18 +107,164 @@ public class SoundHandler implements NounoursSoundHandler {
     @Override
     public void playSound(final String soundId) {
         Log.v(TAG, "playSound " + soundId);
-        if (!mSoundEnabled) return;
-        String assetPath = mSoundCache.getAssetPath(soundId);
-        try {
-            AssetFileDescriptor assetFd = mContext.getAssets().openFd(assetPath);
+        if (!mSoundEnabled) {
+            setClock(soundId, START_TIME_NONE);
+            return;
+        }
+        long requestTime = System.nanoTime();
+        if (playFromSoundPool(soundId)) {
+            // The sound pool starts mixing the sound right away.
+            setClock(soundId, System.nanoTime());
+            mSoundCache.onPlayStarted(soundId, requestTime, true);
+            return;
+        }
+        synchronized (this) {
+            if (soundId.equals(mPendingSoundId) || soundId.equals(mPreparingSoundId)) return;
+            mPendingSoundId = soundId;
+            mPendingRequestTime = requestTime;
+            mClockSoundId = soundId;
+            mClockStartTime = START_TIME_PENDING;
+            if (!mIsStreamScheduled) {
+                mIsStreamScheduled = true;
+                mAudioHandler.post(mStreamRunnable);
+            }
+        }
+    }
+
+    /**
+     * @return false if the sound isn't loaded in the sound pool.
+     */
+    private boolean playFromSoundPool(String soundId) {
+        SoundPool soundPool = mSoundCache.getSoundPool();
+        int soundPoolId = mSoundCache.getSoundPoolId(soundId);
+        if (soundPool == null || soundPoolId == 0) return false;
+        int streamId = soundPool.play(soundPoolId, 1f, 1f, 1, 0, 1f);
+        if (streamId == 0) return false;
+        synchronized (mStreamIds) {
+            mStreamIds[mNextStreamIndex] = streamId;
+            mNextStreamIndex = (mNextStreamIndex + 1) % MAX_TRACKED_STREAMS;
+        }
+        return true;
+    }
+
+    /**
+     * Start preparing the latest requested sound, in the audio thread.
+     */
+    private final Runnable mStreamRunnable = new Runnable() {
+        @Override
+        public void run() {
+            String soundId;
+            synchronized (SoundHandler.this) {
+                soundId = mPendingSoundId;
+                mPendingSoundId = null;
+                mIsStreamScheduled = false;
+                mPreparingSoundId = soundId;
+                mPreparingRequestTime = mPendingRequestTime;
+            }
+            if (soundId == null) return;
+            // This also cancels the preparation of a previous sound.
+            mAudioHandler.removeCallbacks(mTimestampRunnable);
             mMediaPlayer.reset();
-            mMediaPlayer.setDataSource(assetFd.getFileDescriptor(),
-                    assetFd.getStartOffset(), assetFd.getLength());
-            mMediaPlayer.prepare();
-            mMediaPlayer.start();
-        } catch (IOException e) {
-            Log.e(TAG, e.getMessage(), e);
+            try {
+                AssetFileDescriptor assetFd = mSoundCache.getAssetFileDescriptor(soundId);
+                if (assetFd != null) {
+                    setDataSource(assetFd);
+                } else {
+                    String assetPath = mSoundCache.getAssetPath(soundId);
+                    if (assetPath == null) {
+                        onStreamFailed(soundId);
+                        return;
+                    }
+                    assetFd = mContext.getAssets().openFd(assetPath);
+                    try {
+                        setDataSource(assetFd);
+                    } finally {
+                        assetFd.close();
+                    }
+                }
+                mMediaPlayer.prepareAsync();
+            } catch (IOException e) {
+                Log.e(TAG, e.getMessage(), e);
+                onStreamFailed(soundId);
+            }
+        }
+    };
+
+    private void setDataSource(AssetFileDescriptor assetFd) throws IOException {
+        mMediaPlayer.setDataSource(assetFd.getFileDescriptor(), assetFd.getStartOffset(), assetFd.getLength());
+    }
+
+    private final MediaPlayer.OnPreparedListener mOnPreparedListener = new MediaPlayer.OnPreparedListener() {
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            String soundId;
+            long requestTime;
+            synchronized (SoundHandler.this) {
+                soundId = mPreparingSoundId;
+                requestTime = mPreparingRequestTime;
+            }
+            // The sound was stopped, or superseded, while it was prepared.
+            if (soundId == null || !mSoundEnabled) return;
+            mp.start();
+            setClock(soundId, System.nanoTime());
+            mSoundCache.onPlayStarted(soundId, requestTime, false);
+            onStreamEnded(soundId);
+            mPlayingSoundId = soundId;
+            mTimestampPollCount = 0;
+            mAudioHandler.postDelayed(mTimestampRunnable, TIMESTAMP_POLL_INTERVAL_MS);
+        }
+    };
+
+    /**
+     * Replace the start time of the playing sound by the one reported by the audio output, once
+     * it's available.
+     */
+    private final Runnable mTimestampRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long startTime = MediaPlayerCompat.getPlaybackStartTime(mMediaPlayer);
+            if (startTime > 0) {
+                synchronized (SoundHandler.this) {
+                    if (mPlayingSoundId.equals(mClockSoundId) && mClockStartTime > 0) mClockStartTime = startTime;
+                }
+            } else if (++mTimestampPollCount < MAX_TIMESTAMP_POLLS) {
+                mAudioHandler.postDelayed(this, TIMESTAMP_POLL_INTERVAL_MS);
+            }
         }
+    };
+
+    /**
+     * The given sound isn't being prepared anymore: it can be requested again.
+     */
+    private synchronized void onStreamEnded(String soundId) {
+        if (soundId.equals(mPreparingSoundId)) mPreparingSoundId = null;
+    }
+
+    private synchronized void onStreamFailed(String soundId) {
+        onStreamEnded(soundId);
+        if (soundId.equals(mClockSoundId)) setClock(soundId, START_TIME_NONE);
+    }
+
+    private synchronized void setClock(String soundId, long startTime) {
+        mClockSoundId = soundId;
+        mClockStartTime = startTime;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized long getSoundStartTime(String soundId) {
+        return soundId.equals(mClockSoundId) ? mClockStartTime : START_TIME_NONE;
+    }
+
+    @Override
+    public synchronized long awaitSoundStartTime(String soundId, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long remaining = timeoutMs;
+        while (remaining > 0 && getSoundStartTime(soundId) == START_TIME_PENDING) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return getSoundStartTime(soundId);
     }
 
     /**
@@ -79,7 +275,26 @@ public class SoundHandler implements NounoursSoundHandler {
     @Override
     public void stopSound() {
         Log.v(TAG, "stopSound");
-        mMediaPlayer.stop();
+        synchronized (this) {
+            mPendingSoundId = null;
+            mPreparingSoundId = null;
+            mClockStartTime = START_TIME_NONE;
+            notifyAll();
+        }
+        mAudioHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mAudioHandler.removeCallbacks(mTimestampRunnable);
+                mMediaPlayer.reset();
+            }
+        });
+        SoundPool soundPool = mSoundCache.getSoundPool();
+        synchronized (mStreamIds) {
+            for (int i = 0; i < MAX_TRACKED_STREAMS; i++) {
+                if (soundPool != null && mStreamIds[i] != 0) soundPool.stop(mStreamIds[i]);
+                mStreamIds[i] = 0;
+            }
+        }
         Log.v(TAG, "stopSound finished");
     }
 
@@ -91,14 +306,52 @@ public class SoundHandler implements NounoursSoundHandler {
     @Override
     public void setEnableSound(final boolean enableSound) {
         mSoundEnabled = enableSound;
-        if (enableSound) {
-            mMediaPlayer.setVolume(1f, 1f);
-        } else {
-            mMediaPlayer.setVolume(0f, 0f);
+        final float volume = enableSound ? 1f : 0f;
+        mAudioHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mMediaPlayer.setVolume(volume, volume);
+            }
+        });
+        SoundPool soundPool = mSoundCache.getSoundPool();
+        if (soundPool == null) return;
+        synchronized (mStreamIds) {
+            for (int streamId : mStreamIds) {
+                if (streamId != 0) soundPool.setVolume(streamId, volume, volume);
+            }
+        }
+    }
+
+    /**
+     * Print the latency of the first play of each sound.
+     */
+    public void dump(PrintWriter writer) {
+        mSoundCache.dump(writer);
+    }
+
+    /**
+     * Release the media player and stop the audio thread.
+     */
+    public void release() {
+        Log.v(TAG, "release");
+        synchronized (this) {
+            mPendingSoundId = null;
+            mPreparingSoundId = null;
+            mClockStartTime = START_TIME_NONE;
+            notifyAll();
         }
+        mAudioHandler.removeCallbacks(mStreamRunnable);
+        mAudioHandler.removeCallbacks(mTimestampRunnable);
+        mAudioHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mMediaPlayer.release();
+                Looper.myLooper().quit();
+            }
+        });
     }
 
-    private static class MediaPlayerErrorListener implements MediaPlayer.OnErrorListener {
+    private class MediaPlayerErrorListener implements MediaPlayer.OnErrorListener {
         /**
          * Some error occurred using the media player
          *
@@ -109,6 +362,11 @@ public class SoundHandler implements NounoursSoundHandler {
         public boolean onError(final MediaPlayer mp, final int what, final int extra) {
             Log.v(TAG, "MediaPlayer error: MediaPlayer = " + mp + "(" + mp.getClass() + "), what=" + what
                     + ", extra = " + extra);
+            synchronized (SoundHandler.this) {
+                mPreparingSoundId = null;
+                mClockStartTime = START_TIME_NONE;
+                SoundHandler.this.notifyAll();
+            }
             return false;
         }
     }
@@ -24,7 +24,8 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnTouchListener;
 
-import ca.rmen.nounours.Nounours;
+import ca.rmen.nounours.android.common.nounours.AndroidNounours;
+import ca.rmen.nounours.android.common.nounours.TouchTracker;
 
 /**
  * Manages touch events for Nounours on the Android device.
@@ -34,9 +35,9 @@ import ca.rmen.nounours.Nounours;
 public class TouchListener implements OnTouchListener {
 
     private final GestureDetector mGestureDetector;
-    private final Nounours mNounours;
+    private final AndroidNounours mNounours;
 
-    public TouchListener(Nounours nounours,
+    public TouchListener(AndroidNounours nounours,
                          GestureDetector gestureDetector) {
         mNounours = nounours;
         mGestureDetector = gestureDetector;
@@ -50,16 +51,20 @@ public class TouchListener implements OnTouchListener {
      */
     @Override
     public boolean onTouch(final View v, final MotionEvent event) {
+        // Ignore input until nounours has finished initializing.
+        if (!mNounours.isReady()) return true;
 
         if (mGestureDetector != null) {
             mGestureDetector.onTouchEvent(event);
         }
+        // The moves are coalesced, and handled once per frame.
+        TouchTracker touchTracker = mNounours.getTouchTracker();
         if (event.getAction() == MotionEvent.ACTION_DOWN) {
-            mNounours.onPress((int) event.getX(), (int) event.getY());
+            touchTracker.onPress((int) event.getX(), (int) event.getY());
         } else if (event.getAction() == MotionEvent.ACTION_UP) {
-            mNounours.onRelease();
+            touchTracker.onRelease();
         } else if (event.getAction() == MotionEvent.ACTION_MOVE) {
-            mNounours.onMove((int) event.getX(), (int) event.getY());
+            touchTracker.onMove(event);
         }
         return true;
     }
@@ -20,37 +20,124 @@
 package ca.rmen.nounours.android.handheld.nounours;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.os.Vibrator;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import ca.rmen.nounours.NounoursVibrateHandler;
+import ca.rmen.nounours.android.common.Constants;
+import ca.rmen.nounours.android.common.nounours.AnimationVibrator;
+import ca.rmen.nounours.android.handheld.compat.VibratorCompat;
+import ca.rmen.nounours.data.Animation;
+import ca.rmen.nounours.data.AnimationImage;
 
 /**
  * Manages vibration for Nounours on the android device.
+ * <p/>
+ * The vibration of each animation is compiled when the theme is loaded: a pulse at the start of
+ * each frame.  It's started by the animation handler with the first frame.  The vibration
+ * requested by the library is ignored while such a waveform is playing, and the other
+ * animations, which have no compiled waveform, vibrate as the library requests.
  *
  * @author Carmen Alvarez
  */
-public class VibrateHandler implements NounoursVibrateHandler {
+public class VibrateHandler implements NounoursVibrateHandler, AnimationVibrator {
+    private static final String TAG = Constants.TAG + VibrateHandler.class.getSimpleName();
 
-    private final Context mContext;
+    private final Vibrator mVibrator;
+    // The waveforms of the animations of the current theme, by animation id.
+    private volatile Map<String, Waveform> mWaveforms = Collections.emptyMap();
+    // The uptime at which the waveform being played ends, or 0.
+    private long mWaveformEndTime;
 
     public VibrateHandler(Context context) {
-        this.mContext = context;
+        mVibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
     }
 
     @Override
     public void doVibrate(final long duration) {
-        final Vibrator vibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
-        vibrator.vibrate(duration);
+        mVibrator.vibrate(duration);
     }
 
+    /**
+     * The library asks for the vibration of an animation it's about to start.
+     */
     @Override
     public void doVibrate(final long duration, final long interval) {
-        final Vibrator vibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
+        // The animation handler started the vibration with the first frame.
+        if (isWaveformPlaying()) return;
         final long[] pattern = new long[(int) (duration / interval)];
         for (int i = 0; i < pattern.length; i++) {
             pattern[i] = interval;
         }
-        vibrator.vibrate(pattern, -1);
+        mVibrator.vibrate(pattern, -1);
+    }
+
+    @Override
+    public void compileWaveforms(Collection<Animation> animations, long vibrateInterval) {
+        Map<String, Waveform> waveforms = new HashMap<>();
+        for (Animation animation : animations) {
+            if (!animation.isVibrate() || animation.getImages().isEmpty()) continue;
+            waveforms.put(animation.getId(), new Waveform(compilePattern(animation, vibrateInterval)));
+        }
+        Log.v(TAG, "compiled " + waveforms.size() + " waveforms");
+        mWaveforms = waveforms;
     }
 
+    @Override
+    public synchronized void startWaveform(String animationId) {
+        Waveform waveform = mWaveforms.get(animationId);
+        if (waveform == null) return;
+        VibratorCompat.vibrate(mVibrator, waveform.waveform);
+        mWaveformEndTime = SystemClock.uptimeMillis() + waveform.duration;
+    }
+
+    /**
+     * Stop the waveform if it's still playing.  Another vibration isn't cancelled.
+     */
+    @Override
+    public synchronized void cancelWaveform() {
+        if (isWaveformPlaying()) mVibrator.cancel();
+        mWaveformEndTime = 0;
+    }
+
+    private synchronized boolean isWaveformPlaying() {
+        return mWaveformEndTime > SystemClock.uptimeMillis();
+    }
+
+    /**
+     * @return the vibration pattern of the animation: starting right away, for each frame, a
+     * vibration of at most vibrateInterval, then a pause until the next frame.
+     */
+    static long[] compilePattern(Animation animation, long vibrateInterval) {
+        List<AnimationImage> images = animation.getImages();
+        int frameCount = images.size() * animation.getRepeat();
+        long[] pattern = new long[1 + 2 * frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            long frameDuration = (long) (animation.getInterval() * images.get(i % images.size()).getDuration());
+            long vibrateDuration = vibrateInterval > 0 ? Math.min(vibrateInterval, frameDuration) : frameDuration;
+            pattern[1 + 2 * i] = vibrateDuration;
+            pattern[2 + 2 * i] = frameDuration - vibrateDuration;
+        }
+        return pattern;
+    }
+
+    private static class Waveform {
+        // Created by VibratorCompat.
+        final Object waveform;
+        final long duration;
+
+        Waveform(long[] pattern) {
+            waveform = VibratorCompat.createWaveform(pattern);
+            long duration = 0;
+            for (long segment : pattern) duration += segment;
+            this.duration = duration;
+        }
+    }
 }
@@ -0,0 +1,227 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.rmen.nounours.android.common.nounours.theme.ThemeCatalog;
+import ca.rmen.nounours.android.common.nounours.theme.ThemeIndex;
+import ca.rmen.nounours.data.Image;
+import ca.rmen.nounours.data.Theme;
+
+/**
+ * The orientation rules of a theme, compiled for lookup by yaw, pitch and roll.
+ * <p/>
+ * The pitch and roll space is divided into a grid of buckets.  Each bucket lists, in file order,
+ * the rules whose pitch and roll ranges overlap it.  A lookup only checks the rules of one bucket,
+ * and returns the first rule which matches, like a scan of all the rules in file order would.
+ * <p/>
+ * Instances are immutable.  The table of each theme is cached for the life of the process.
+ */
+final class OrientationTable {
+
+    static final OrientationTable EMPTY = new OrientationTable(null, new Image[0], new float[0]);
+
+    // Guarded by itself.
+    private static final Map<String, OrientationTable> sTables = new HashMap<>();
+
+    private static final float MIN_PITCH = -90;
+    private static final float MAX_PITCH = 90;
+    private static final float MIN_ROLL = -180;
+    private static final float MAX_ROLL = 180;
+    private static final float BUCKET_SIZE = 5;
+    private static final int PITCH_BUCKETS = (int) ((MAX_PITCH - MIN_PITCH) / BUCKET_SIZE);
+    private static final int ROLL_BUCKETS = (int) ((MAX_ROLL - MIN_ROLL) / BUCKET_SIZE);
+
+    private final Theme mTheme;
+    private final Image[] mImages;
+    private final float[] mMinYaw;
+    private final float[] mMaxYaw;
+    private final float[] mMinPitch;
+    private final float[] mMaxPitch;
+    private final float[] mMinRoll;
+    private final float[] mMaxRoll;
+    private final boolean mNeedsYaw;
+    // The rules of bucket b are mBucketRules[mBucketStart[b]] to mBucketRules[mBucketStart[b + 1] - 1].
+    private final int[] mBucketStart;
+    private final int[] mBucketRules;
+
+    /**
+     * @return the table of the given theme, if it was already compiled, or null.
+     */
+    static OrientationTable getCached(Theme theme) {
+        synchronized (sTables) {
+            OrientationTable table = sTables.get(theme.getId());
+            // The theme may have been reloaded since: the table must refer to its current images.
+            return table != null && table.mTheme == theme ? table : null;
+        }
+    }
+
+    /**
+     * @return the table of the given theme, compiled from its index if it isn't cached yet.
+     */
+    static OrientationTable get(Context context, Theme theme) throws IOException {
+        OrientationTable table = getCached(theme);
+        if (table != null) return table;
+        table = create(ThemeCatalog.getInstance(context).getThemeIndex(theme.getId()), theme);
+        synchronized (sTables) {
+            sTables.put(theme.getId(), table);
+        }
+        return table;
+    }
+
+    /**
+     * Compile the orientation rules of the given theme.  The rules whose image isn't in the theme
+     * are ignored.
+     */
+    static OrientationTable create(ThemeIndex themeIndex, Theme theme) {
+        int ruleCount = themeIndex.getOrientationRuleCount();
+        Map<String, Image> themeImages = theme.getImages();
+        Image[] images = new Image[ruleCount];
+        float[] bounds = new float[ruleCount * 6];
+        int count = 0;
+        for (int i = 0; i < ruleCount; i++) {
+            Image image = themeImages.get(themeIndex.getImageId(themeIndex.getOrientationRuleImage(i)));
+            if (image == null) continue;
+            images[count] = image;
+            bounds[count * 6] = themeIndex.getOrientationRuleMinYaw(i);
+            bounds[count * 6 + 1] = themeIndex.getOrientationRuleMaxYaw(i);
+            bounds[count * 6 + 2] = themeIndex.getOrientationRuleMinPitch(i);
+            bounds[count * 6 + 3] = themeIndex.getOrientationRuleMaxPitch(i);
+            bounds[count * 6 + 4] = themeIndex.getOrientationRuleMinRoll(i);
+            bounds[count * 6 + 5] = themeIndex.getOrientationRuleMaxRoll(i);
+            count++;
+        }
+        Image[] resolvedImages = new Image[count];
+        System.arraycopy(images, 0, resolvedImages, 0, count);
+        float[] resolvedBounds = new float[count * 6];
+        System.arraycopy(bounds, 0, resolvedBounds, 0, count * 6);
+        return new OrientationTable(theme, resolvedImages, resolvedBounds);
+    }
+
+    /**
+     * @param theme  the theme the images belong to.
+     * @param images the image of each rule, in file order.
+     * @param bounds minYaw, maxYaw, minPitch, maxPitch, minRoll and maxRoll of each rule.
+     */
+    OrientationTable(Theme theme, Image[] images, float[] bounds) {
+        int ruleCount = images.length;
+        mTheme = theme;
+        mImages = images;
+        mMinYaw = new float[ruleCount];
+        mMaxYaw = new float[ruleCount];
+        mMinPitch = new float[ruleCount];
+        mMaxPitch = new float[ruleCount];
+        mMinRoll = new float[ruleCount];
+        mMaxRoll = new float[ruleCount];
+        boolean needsYaw = false;
+        for (int i = 0; i < ruleCount; i++) {
+            mMinYaw[i] = bounds[i * 6];
+            mMaxYaw[i] = bounds[i * 6 + 1];
+            mMinPitch[i] = bounds[i * 6 + 2];
+            mMaxPitch[i] = bounds[i * 6 + 3];
+            mMinRoll[i] = bounds[i * 6 + 4];
+            mMaxRoll[i] = bounds[i * 6 + 5];
+            if (mMinYaw[i] > -180 || mMaxYaw[i] < 180) needsYaw = true;
+        }
+        mNeedsYaw = needsYaw;
+
+        // Count the rules of each bucket, then fill the buckets in file order.
+        int bucketCount = PITCH_BUCKETS * ROLL_BUCKETS;
+        mBucketStart = new int[bucketCount + 1];
+        for (int i = 0; i < ruleCount; i++) {
+            if (isEmpty(i)) continue;
+            for (int p = getPitchBucket(mMinPitch[i]); p <= getPitchBucket(mMaxPitch[i]); p++) {
+                for (int r = getRollBucket(mMinRoll[i]); r <= getRollBucket(mMaxRoll[i]); r++) {
+                    mBucketStart[p * ROLL_BUCKETS + r + 1]++;
+                }
+            }
+        }
+        for (int b = 0; b < bucketCount; b++) mBucketStart[b + 1] += mBucketStart[b];
+        mBucketRules = new int[mBucketStart[bucketCount]];
+        int[] bucketSizes = new int[bucketCount];
+        for (int i = 0; i < ruleCount; i++) {
+            if (isEmpty(i)) continue;
+            for (int p = getPitchBucket(mMinPitch[i]); p <= getPitchBucket(mMaxPitch[i]); p++) {
+                for (int r = getRollBucket(mMinRoll[i]); r <= getRollBucket(mMaxRoll[i]); r++) {
+                    int bucket = p * ROLL_BUCKETS + r;
+                    mBucketRules[mBucketStart[bucket] + bucketSizes[bucket]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the given rule can't match any orientation.
+     */
+    private boolean isEmpty(int rule) {
+        return mMinPitch[rule] > mMaxPitch[rule] || mMinRoll[rule] > mMaxRoll[rule] || mMinYaw[rule] > mMaxYaw[rule];
+    }
+
+    boolean isEmpty() {
+        return mImages.length == 0;
+    }
+
+    /**
+     * @return true if any rule depends on the yaw.
+     */
+    boolean needsYaw() {
+        return mNeedsYaw;
+    }
+
+    /**
+     * @return the image of the first rule which matches the given orientation, in degrees, or null if no rule matches.
+     */
+    Image getImage(float yaw, float pitch, float roll) {
+        if (mImages.length == 0) return null;
+        int bucket = getPitchBucket(pitch) * ROLL_BUCKETS + getRollBucket(roll);
+        for (int i = mBucketStart[bucket]; i < mBucketStart[bucket + 1]; i++) {
+            int rule = mBucketRules[i];
+            if (pitch >= mMinPitch[rule]
+                    && pitch <= mMaxPitch[rule]
+                    && roll >= mMinRoll[rule]
+                    && roll <= mMaxRoll[rule]
+                    && yaw >= mMinYaw[rule]
+                    && yaw <= mMaxYaw[rule]) {
+                return mImages[rule];
+            }
+        }
+        return null;
+    }
+
+    private static int getPitchBucket(float pitch) {
+        return getBucket(pitch, MIN_PITCH, PITCH_BUCKETS);
+    }
+
+    private static int getRollBucket(float roll) {
+        return getBucket(roll, MIN_ROLL, ROLL_BUCKETS);
+    }
+
+    private static int getBucket(float value, float min, int bucketCount) {
+        int bucket = (int) ((value - min) / BUCKET_SIZE);
+        if (bucket < 0) return 0;
+        if (bucket >= bucketCount) return bucketCount - 1;
+        return bucket;
+    }
+}
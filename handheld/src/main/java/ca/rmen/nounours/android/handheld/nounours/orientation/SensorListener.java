@@ -25,88 +25,167 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import android.view.Surface;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.HashSet;
-import java.util.Set;
 
 import ca.rmen.nounours.android.common.Constants;
 import ca.rmen.nounours.NounoursRecorder;
 import ca.rmen.nounours.android.handheld.compat.DisplayCompat;
 import ca.rmen.nounours.data.Image;
+import ca.rmen.nounours.data.Theme;
 import ca.rmen.nounours.android.common.nounours.AndroidNounours;
+import ca.rmen.nounours.android.common.nounours.NounoursStateListener;
 
 /**
  * Manages shaking and tilting events for Nounours on the Android device.
+ * <p/>
+ * The sensor events are handled without allocating memory: this runs for as long as the app,
+ * Dream or live wallpaper is visible.  They are delivered on the {@link SensorThread}, not on the
+ * main thread, which only receives the decisions: shake, show a tilt image, or clear it.
+ * The library state is only changed on the main thread, like the touch input does.
+ * <p/>
+ * The sensors are registered by {@link #register()}, according to what the current theme and
+ * the state of Nounours need: see {@link SensorRegistration}.
+ * <p/>
+ * The shake and tilt logic is in {@link SensorListenerCore}.  The events can be recorded by the
+ * {@link SensorTraceRecorder}, to replay them offline.
  *
  * @author Carmen Alvarez
  */
 public class SensorListener implements SensorEventListener {
     private static final String TAG = Constants.TAG + SensorListener.class.getSimpleName();
 
-    private float mXAccel = Float.MAX_VALUE;
-    private float mYAccel = Float.MAX_VALUE;
-    private float mZAccel = Float.MAX_VALUE;
-    private boolean mIsTiltImage = false;
-    private final Set<OrientationImage> mOrientationImages = new HashSet<>();
-
     private AndroidNounours mNounours = null;
     private final Context mContext;
 
-    private float[] mLastAcceleration = null;
-    private float[] mLastMagneticField = null;
-    private long mLastAnalysisTimestamp = 0;
+    private final SensorListenerCore mCore;
+    private final Handler mUIHandler = new Handler(Looper.getMainLooper());
+    // The last tilt image decided by the sensor thread, for mTiltImageTask.
+    private volatile Image mTiltImage;
+    private final SensorRegistration mSensorRegistration;
+    // Null if recording is disabled.
+    private final SensorTraceRecorder mTraceRecorder;
+    // Refreshed by the rotation listener, rather than queried for each event.
+    private volatile int mDisplayRotation;
+    private Object mRotationListenerRegistration;
 
+    /**
+     * @param sensorManager may be null if the sensors shouldn't be used.
+     */
     public SensorListener(AndroidNounours nounours,
-                          Context context) {
+                          Context context,
+                          SensorManager sensorManager) {
         mNounours = nounours;
         mContext = context;
-        mLastMagneticField = new float[]{0, 0, -1};
+        mCore = new SensorListenerCore(mCoreCallback);
+        mSensorRegistration = new SensorRegistration(sensorManager, this, SensorThread.getHandler());
+        mTraceRecorder = SensorTraceRecorder.isEnabled() ? new SensorTraceRecorder(context) : null;
+    }
+
+    /**
+     * Start listening to the sensors needed by the current theme, and update them as the state
+     * of Nounours changes.
+     */
+    public void register() {
+        if (mRotationListenerRegistration == null) {
+            mRotationListenerRegistration = DisplayCompat.registerRotationListener(mContext, mRotationListener, SensorThread.getHandler());
+        }
+        mRotationListener.run();
+        mNounours.setStateListener(mStateListener);
+        if (mNounours.isReady()) {
+            mSensorRegistration.setNounoursState(mNounours.isAnimationRunning(), mNounours.isShaking(), mNounours.isIdle());
+        }
+        mSensorRegistration.register();
+        onRegistrationsChanged();
+        if (mTraceRecorder != null) {
+            SensorThread.getHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    mTraceRecorder.start();
+                }
+            });
+        }
     }
 
+    public void unregister() {
+        DisplayCompat.unregisterRotationListener(mContext, mRotationListenerRegistration);
+        mRotationListenerRegistration = null;
+        mNounours.setStateListener(null);
+        mSensorRegistration.unregister();
+        // Drop the decisions which haven't been applied yet.
+        mUIHandler.removeCallbacks(mShakeTask);
+        mUIHandler.removeCallbacks(mTiltImageTask);
+        mUIHandler.removeCallbacks(mTiltImageClearedTask);
+        onRegistrationsChanged();
+        if (mTraceRecorder != null) {
+            SensorThread.getHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    mTraceRecorder.stop();
+                }
+            });
+        }
+    }
+
+    private void onRegistrationsChanged() {
+        mCore.setUsesAccelerometerOrientation(mSensorRegistration.usesAccelerometerOrientation());
+    }
+
+    private final Runnable mRotationListener = new Runnable() {
+        @Override
+        public void run() {
+            mDisplayRotation = DisplayCompat.getRotation(mContext);
+            mCore.setDisplayRotation(mDisplayRotation);
+        }
+    };
+
+    private final NounoursStateListener mStateListener = new NounoursStateListener() {
+        @Override
+        public void onNounoursStateChanged(boolean isAnimationRunning, boolean isShaking, boolean isIdle) {
+            mSensorRegistration.setNounoursState(isAnimationRunning, isShaking, isIdle);
+            onRegistrationsChanged();
+        }
+    };
+
     public void rereadOrientationFile(final Context context) {
         Log.v(TAG, "rereadOrientationFile");
-        mOrientationImages.clear();
-        new AsyncTask<Void, Void, Void>() {
+        final Theme theme = mNounours.getCurrentTheme();
+        OrientationTable cachedOrientationTable = OrientationTable.getCached(theme);
+        if (cachedOrientationTable != null) {
+            setOrientationTable(cachedOrientationTable);
+            return;
+        }
+        // Don't show the tilt images of the previous theme while the new table is compiled.
+        mCore.setOrientationTable(OrientationTable.EMPTY);
+        new AsyncTask<Void, Void, OrientationTable>() {
 
             @Override
-            protected Void doInBackground(Void... params) {
-                InputStream orientationImageFile = getOrientationFile(mNounours.getCurrentTheme().getId(), context);
-                if (orientationImageFile != null) {
-                    OrientationImageReader orientationImageReader;
-                    try {
-                        orientationImageReader = new OrientationImageReader(
-                                orientationImageFile);
-                        mOrientationImages.addAll(orientationImageReader
-                                .getOrientationImages());
-                    } catch (IOException e) {
-                        Log.v(TAG, e.getMessage(), e);
-                    }
-                } else
-                    Log.v(TAG, "No orientation file!");
+            protected OrientationTable doInBackground(Void... params) {
+                try {
+                    return OrientationTable.get(context, theme);
+                } catch (IOException e) {
+                    Log.v(TAG, "Couldn't read the theme index: " + e.getMessage(), e);
+                }
                 return null;
             }
+
+            @Override
+            protected void onPostExecute(OrientationTable orientationTable) {
+                // Ignore the result if the theme changed again in the meantime.
+                if (orientationTable == null || mNounours.getCurrentTheme() != theme) return;
+                setOrientationTable(orientationTable);
+            }
         }.execute();
 
     }
 
-    /**
-     * Find the orientation file.
-     *
-     * @return a stream to read the orientation file for the given theme.
-     */
-    private InputStream getOrientationFile(String themeId, Context context) {
-        try {
-            return context.getAssets().open("themes/" + themeId + "/orientationimage2.csv");
-        } catch (IOException e) {
-            Log.v(TAG, "Couldn't open orientation file: " + e.getMessage(), e);
-        }
-
-        return null;
-
+    private void setOrientationTable(OrientationTable orientationTable) {
+        mCore.setOrientationTable(orientationTable);
+        mSensorRegistration.setOrientationNeeds(!orientationTable.isEmpty(), orientationTable.needsYaw());
+        onRegistrationsChanged();
     }
 
     /**
@@ -117,149 +196,73 @@ public class SensorListener implements SensorEventListener {
      */
     @Override
     public void onSensorChanged(SensorEvent event) {
+        if (!mNounours.isReady()) return;
         // Don't do anything if we're shaking.
         if (mNounours.isShaking() || mNounours.isLoading()) {
-            mXAccel = Float.MAX_VALUE;
-            mYAccel = Float.MAX_VALUE;
-            mZAccel = Float.MAX_VALUE;
+            mCore.resetShake();
             return;
         }
         int sensorType = event.sensor.getType();
-
-        if (sensorType == Sensor.TYPE_ACCELEROMETER) {
-            onAccelerationChanged(event);
-        } else if (sensorType == Sensor.TYPE_MAGNETIC_FIELD) {
-            onMagneticFieldChanged(event);
+        if (mTraceRecorder != null) {
+            mTraceRecorder.record(sensorType, mDisplayRotation, event.timestamp, event.values);
         }
-        onOrientationChanged();
+        mCore.onSensorChanged(sensorType, event.timestamp, event.values);
     }
 
     /**
-     * Display a shake animation if the user shook the device.
+     * Called on the sensor thread.  The decisions are applied on the main thread.
      */
-    private void onAccelerationChanged(SensorEvent event) {
-        float[] values = event.values;
-        float eventAccelX = values[0];
-        float eventAccelY = values[1];
-        float eventAccelZ = values[2];
-        if (mXAccel != Float.MAX_VALUE) {
-            final float netAccelX = Math.abs(mXAccel - eventAccelX);
-            final float netAccelY = Math.abs(mYAccel - eventAccelY);
-            final float netAccelZ = Math.abs(mZAccel - eventAccelZ);
-
-            final float shakeFactor = mNounours.getMinShakeSpeed();
-            if (netAccelX > shakeFactor || netAccelY > shakeFactor
-                    || netAccelZ > shakeFactor) {
-                mNounours.onShake();
-            }
-        }
-        // For some reason, the first reading when the app starts, will give
-        // some values of 0.0, which shouldn't be possible.
-        if (eventAccelX != 0.0
-                && eventAccelY != 0.0
-                && eventAccelZ != 0.0) {
-            mXAccel = eventAccelX;
-            mYAccel = eventAccelY;
-            mZAccel = eventAccelZ;
+    private final SensorListenerCore.Callback mCoreCallback = new SensorListenerCore.Callback() {
+        @Override
+        public float getMinShakeSpeed() {
+            return mNounours.getMinShakeSpeed();
         }
-        mLastAcceleration = values.clone();
-    }
-
-    /**
-     * Display a special image if the device is in a given orientation.
-     */
-    private void onOrientationChanged() {
-        long now = System.currentTimeMillis();
-        if (now - mLastAnalysisTimestamp < 500) return;
-        float[] inR = new float[16];
-        float[] I = new float[16];
 
-        mLastAnalysisTimestamp = now;
+        @Override
+        public void onShake() {
+            mUIHandler.post(mShakeTask);
+        }
 
-        // We need to have recorded acceleration and magnetic field at least once.
-        if (mLastAcceleration == null
-                || mLastMagneticField == null
-                || !SensorManager.getRotationMatrix(inR, I,
-                mLastAcceleration, mLastMagneticField))
-            return;
+        @Override
+        public void onTiltImage(Image image) {
+            mTiltImage = image;
+            mUIHandler.post(mTiltImageTask);
+        }
 
-        float[] outR = remapCoordinateSystem(inR);
-        float[] orientationValues = new float[3];
-        orientationValues = SensorManager.getOrientation(outR,
-                orientationValues);
-        float[] orientationValuesDeg = new float[3];
-        for (int i = 0; i < orientationValues.length; i++) {
-            orientationValuesDeg[i] = (float) (orientationValues[i] * 180.0f / Math.PI);
+        @Override
+        public void onTiltImageCleared() {
+            mUIHandler.post(mTiltImageClearedTask);
         }
+    };
 
-        final float yaw = orientationValuesDeg[0];
-        final float pitch = orientationValuesDeg[1];
-        final float roll = orientationValuesDeg[2];
-        for (final OrientationImage orientationImage : mOrientationImages) {
-            if (yaw >= orientationImage.minYaw
-                    && yaw <= orientationImage.maxYaw
-                    && pitch >= orientationImage.minPitch
-                    && pitch <= orientationImage.maxPitch
-                    && roll >= orientationImage.minRoll
-                    && roll <= orientationImage.maxRoll) {
-                final Image image = mNounours.getCurrentTheme().getImages().get(
-                        orientationImage.imageId);
-                mNounours.stopAnimation();
-                mNounours.setImage(image);
-                NounoursRecorder nounoursRecorder = mNounours.getNounoursRecorder();
-                if (nounoursRecorder.isRecording()) nounoursRecorder.addImage(image);
-                // Note that we are currently displaying a "tilt" image.
-                mIsTiltImage = true;
-                return;
-            }
+    private final Runnable mShakeTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mNounours.isShaking() || mNounours.isLoading()) return;
+            mNounours.onShake();
         }
-        // Couldn't find any tilt image for this orientation, reset to the
-        // default image if currently displaying a
-        // tilt image
-        if (mIsTiltImage) {
-            mNounours.reset();
-            mIsTiltImage = false;
+    };
+
+    private final Runnable mTiltImageTask = new Runnable() {
+        @Override
+        public void run() {
+            // We may have started shaking since the decision.
+            if (mNounours.isShaking() || mNounours.isLoading()) return;
+            Image image = mTiltImage;
+            mNounours.stopAnimation();
+            mNounours.setImage(image);
+            NounoursRecorder nounoursRecorder = mNounours.getNounoursRecorder();
+            if (nounoursRecorder.isRecording()) nounoursRecorder.addImage(image);
         }
-    }
-
-    private void onMagneticFieldChanged(SensorEvent event) {
-        mLastMagneticField = event.values.clone();
-    }
-
-    private float[] remapCoordinateSystem(float[] values) {
-        int x = SensorManager.AXIS_X;
-        int y = SensorManager.AXIS_Y;
+    };
 
-        int rotation = DisplayCompat.getRotation(mContext);
-        switch (rotation) {
-            case Surface.ROTATION_90:
-                //noinspection SuspiciousNameCombination
-                x = SensorManager.AXIS_Y;
-                //noinspection SuspiciousNameCombination
-                y = SensorManager.AXIS_MINUS_X;
-
-                break;
-            case Surface.ROTATION_180:
-                y = SensorManager.AXIS_MINUS_Y;
-                x = SensorManager.AXIS_MINUS_X;
-
-                break;
-            case Surface.ROTATION_270:
-                //noinspection SuspiciousNameCombination
-                x = SensorManager.AXIS_MINUS_Y;
-                //noinspection SuspiciousNameCombination
-                y = SensorManager.AXIS_X;
-
-                break;
-            case Surface.ROTATION_0:
-            default:
-                break;
+    private final Runnable mTiltImageClearedTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mNounours.isShaking() || mNounours.isLoading()) return;
+            mNounours.reset();
         }
-
-        float[] result = new float[values.length];
-        SensorManager.remapCoordinateSystem(values, x, y, result);
-        return result;
-    }
+    };
 
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
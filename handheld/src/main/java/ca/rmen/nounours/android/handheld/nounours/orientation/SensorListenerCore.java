@@ -0,0 +1,173 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.view.Surface;
+
+import ca.rmen.nounours.data.Image;
+
+/**
+ * The shake and tilt logic of the {@link SensorListener}, without any dependency on the Android
+ * runtime, so that recorded sensor traces can be replayed on the JVM.
+ * <p/>
+ * All the times are the timestamps of the sensor events, in nanoseconds.  The events are handled
+ * without allocating memory.
+ */
+class SensorListenerCore {
+
+    interface Callback {
+        float getMinShakeSpeed();
+
+        void onShake();
+
+        /**
+         * The device is in the orientation of a tilt image of the theme.
+         */
+        void onTiltImage(Image image);
+
+        /**
+         * The device left the orientation of the last tilt image.
+         */
+        void onTiltImageCleared();
+    }
+
+    // The world axes on which the device x and y axes are mapped, for each Surface.ROTATION_*.
+    private static final int[][] AXES = {
+            {SensorManager.AXIS_X, SensorManager.AXIS_Y},
+            {SensorManager.AXIS_Y, SensorManager.AXIS_MINUS_X},
+            {SensorManager.AXIS_MINUS_X, SensorManager.AXIS_MINUS_Y},
+            {SensorManager.AXIS_MINUS_Y, SensorManager.AXIS_X}};
+
+    private static final long ORIENTATION_ANALYSIS_INTERVAL_NS = 500000000L;
+    // Events of a rotation vector sensor sampled at ORIENTATION_PERIOD_US may arrive a bit early.
+    private static final long MIN_ROTATION_VECTOR_INTERVAL_NS = SensorRegistration.ORIENTATION_PERIOD_US * 1000L / 2;
+
+    private final Callback mCallback;
+    private final SensorProcessor mSensorProcessor = new SensorProcessor();
+    private final ShakeDetector mShakeDetector = new ShakeDetector();
+    // Immutable, swapped when the theme changes.
+    private volatile OrientationTable mOrientationTable = OrientationTable.EMPTY;
+    private volatile boolean mUsesAccelerometerOrientation;
+    // Updated when the display is rotated.
+    private volatile int[] mAxes = AXES[Surface.ROTATION_0];
+
+    private long mLastAnalysisTimestamp;
+    private long mLastRotationVectorTimestamp;
+    private boolean mIsTiltImage;
+
+    SensorListenerCore(Callback callback) {
+        mCallback = callback;
+    }
+
+    void setOrientationTable(OrientationTable orientationTable) {
+        mOrientationTable = orientationTable;
+    }
+
+    /**
+     * @param rotation the Surface.ROTATION_* rotation of the display.
+     */
+    void setDisplayRotation(int rotation) {
+        mAxes = rotation >= 0 && rotation < AXES.length ? AXES[rotation] : AXES[Surface.ROTATION_0];
+    }
+
+    /**
+     * @param usesAccelerometerOrientation true if the orientation must be computed from the
+     *                                     accelerometer events, and the magnetic field events if the
+     *                                     device has a magnetic field sensor.  If false, the
+     *                                     accelerometer is only used for shakes.
+     */
+    void setUsesAccelerometerOrientation(boolean usesAccelerometerOrientation) {
+        mUsesAccelerometerOrientation = usesAccelerometerOrientation;
+    }
+
+    /**
+     * Forget the last accelerations: they won't be used to detect the next shake.
+     */
+    void resetShake() {
+        mShakeDetector.reset();
+    }
+
+    @SuppressWarnings("InlinedApi")
+    void onSensorChanged(int sensorType, long timestamp, float[] values) {
+        if (sensorType == Sensor.TYPE_ACCELEROMETER) {
+            onAccelerationChanged(timestamp, values);
+            // The accelerometer may only be registered for shakes.
+            if (!mUsesAccelerometerOrientation) return;
+            // We may have switched from a rotation vector sensor, for a new theme.
+            mSensorProcessor.clearRotationVector();
+        } else if (sensorType == Sensor.TYPE_MAGNETIC_FIELD) {
+            onMagneticFieldChanged(values);
+        } else if (sensorType == Sensor.TYPE_ROTATION_VECTOR || sensorType == Sensor.TYPE_GAME_ROTATION_VECTOR) {
+            // The sensor is already sampled at the rate we need.
+            if (timestamp - mLastRotationVectorTimestamp < MIN_ROTATION_VECTOR_INTERVAL_NS) return;
+            mLastRotationVectorTimestamp = timestamp;
+            mSensorProcessor.setRotationVector(values);
+            onOrientationChanged();
+            return;
+        } else {
+            return;
+        }
+        if (timestamp - mLastAnalysisTimestamp < ORIENTATION_ANALYSIS_INTERVAL_NS) return;
+        mLastAnalysisTimestamp = timestamp;
+        onOrientationChanged();
+    }
+
+    /**
+     * Shake if the user shook the device.
+     */
+    private void onAccelerationChanged(long timestamp, float[] values) {
+        if (mShakeDetector.onAcceleration(timestamp, values, mCallback.getMinShakeSpeed())) {
+            mCallback.onShake();
+        }
+        mSensorProcessor.setAcceleration(values);
+    }
+
+    private void onMagneticFieldChanged(float[] values) {
+        mSensorProcessor.setMagneticField(values);
+    }
+
+    /**
+     * Display a special image if the device is in a given orientation.
+     */
+    private void onOrientationChanged() {
+        // Map the device axes to the world axes, according to the screen rotation.
+        final int[] axes = mAxes;
+        // We need to have recorded the acceleration at least once.
+        if (!mSensorProcessor.computeOrientation(axes[0], axes[1])) return;
+
+        final Image image = mOrientationTable.getImage(mSensorProcessor.getYaw(),
+                mSensorProcessor.getPitch(), mSensorProcessor.getRoll());
+        if (image != null) {
+            // Note that we are currently displaying a "tilt" image.
+            mIsTiltImage = true;
+            mCallback.onTiltImage(image);
+            return;
+        }
+        // Couldn't find any tilt image for this orientation, reset to the
+        // default image if currently displaying a
+        // tilt image
+        if (mIsTiltImage) {
+            mIsTiltImage = false;
+            mCallback.onTiltImageCleared();
+        }
+    }
+}
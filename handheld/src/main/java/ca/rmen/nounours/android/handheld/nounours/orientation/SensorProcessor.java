@@ -0,0 +1,206 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+/**
+ * Computes the device orientation from the accelerometer and magnetic field readings, or from
+ * a rotation vector, without allocating any memory.
+ * <p/>
+ * This is the math of {@link android.hardware.SensorManager#getRotationMatrix},
+ * {@link android.hardware.SensorManager#getRotationMatrixFromVector},
+ * {@link android.hardware.SensorManager#remapCoordinateSystem} and
+ * {@link android.hardware.SensorManager#getOrientation}, on 3x3 matrices, working in
+ * preallocated buffers.  The axes are the {@link android.hardware.SensorManager} AXIS_* constants.
+ */
+class SensorProcessor {
+    private static final float GRAVITY_EARTH = 9.80665f;
+    private static final float FREE_FALL_GRAVITY_SQUARED = 0.01f * GRAVITY_EARTH * GRAVITY_EARTH;
+    private static final float RADIANS_TO_DEGREES = (float) (180.0 / Math.PI);
+
+    private final float[] mAcceleration = new float[3];
+    private final float[] mMagneticField = {0, 0, -1};
+    private final float[] mRotationMatrix = new float[9];
+    private final float[] mRemappedMatrix = new float[9];
+    private final float[] mRotationVector = new float[4];
+    private boolean mHasAcceleration;
+    private boolean mHasRotationVector;
+
+    private float mYaw;
+    private float mPitch;
+    private float mRoll;
+
+    void setAcceleration(float[] values) {
+        System.arraycopy(values, 0, mAcceleration, 0, 3);
+        mHasAcceleration = true;
+    }
+
+    void setMagneticField(float[] values) {
+        System.arraycopy(values, 0, mMagneticField, 0, 3);
+    }
+
+    /**
+     * Use the given rotation vector reading to compute the orientation, instead of the
+     * accelerometer and magnetic field, until {@link #clearRotationVector()} is called.
+     *
+     * @param values the values of a rotation vector or game rotation vector sensor event. The
+     *               scalar component is optional.
+     */
+    void setRotationVector(float[] values) {
+        int length = Math.min(values.length, 4);
+        System.arraycopy(values, 0, mRotationVector, 0, length);
+        if (length < 4) {
+            float w = 1 - values[0] * values[0] - values[1] * values[1] - values[2] * values[2];
+            mRotationVector[3] = w > 0 ? (float) Math.sqrt(w) : 0;
+        }
+        mHasRotationVector = true;
+    }
+
+    void clearRotationVector() {
+        mHasRotationVector = false;
+    }
+
+    /**
+     * Compute the yaw, pitch and roll, in degrees.
+     *
+     * @param axisX the axis of the world on which the x axis of the device is mapped.
+     * @param axisY the axis of the world on which the y axis of the device is mapped.
+     * @return false if the orientation couldn't be computed: no acceleration reading yet, or
+     * the device is in free fall, or close to the magnetic north or south pole.
+     */
+    boolean computeOrientation(int axisX, int axisY) {
+        if (mHasRotationVector) computeRotationMatrixFromVector();
+        else if (!mHasAcceleration || !computeRotationMatrix()) return false;
+        if (!remapCoordinateSystem(mRotationMatrix, axisX, axisY, mRemappedMatrix)) return false;
+        float[] r = mRemappedMatrix;
+        mYaw = (float) Math.atan2(r[1], r[4]) * RADIANS_TO_DEGREES;
+        mPitch = (float) Math.asin(-r[7]) * RADIANS_TO_DEGREES;
+        mRoll = (float) Math.atan2(-r[6], r[8]) * RADIANS_TO_DEGREES;
+        return true;
+    }
+
+    float getYaw() {
+        return mYaw;
+    }
+
+    float getPitch() {
+        return mPitch;
+    }
+
+    float getRoll() {
+        return mRoll;
+    }
+
+    private boolean computeRotationMatrix() {
+        float ax = mAcceleration[0];
+        float ay = mAcceleration[1];
+        float az = mAcceleration[2];
+        final float normSquaredA = ax * ax + ay * ay + az * az;
+        if (normSquaredA < FREE_FALL_GRAVITY_SQUARED) return false;
+
+        final float ex = mMagneticField[0];
+        final float ey = mMagneticField[1];
+        final float ez = mMagneticField[2];
+        float hx = ey * az - ez * ay;
+        float hy = ez * ax - ex * az;
+        float hz = ex * ay - ey * ax;
+        final float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+        if (normH < 0.1f) return false;
+
+        final float invH = 1.0f / normH;
+        hx *= invH;
+        hy *= invH;
+        hz *= invH;
+        final float invA = 1.0f / (float) Math.sqrt(normSquaredA);
+        ax *= invA;
+        ay *= invA;
+        az *= invA;
+        final float mx = ay * hz - az * hy;
+        final float my = az * hx - ax * hz;
+        final float mz = ax * hy - ay * hx;
+
+        float[] r = mRotationMatrix;
+        r[0] = hx;
+        r[1] = hy;
+        r[2] = hz;
+        r[3] = mx;
+        r[4] = my;
+        r[5] = mz;
+        r[6] = ax;
+        r[7] = ay;
+        r[8] = az;
+        return true;
+    }
+
+    private void computeRotationMatrixFromVector() {
+        final float q1 = mRotationVector[0];
+        final float q2 = mRotationVector[1];
+        final float q3 = mRotationVector[2];
+        final float q0 = mRotationVector[3];
+
+        final float sqQ1 = 2 * q1 * q1;
+        final float sqQ2 = 2 * q2 * q2;
+        final float sqQ3 = 2 * q3 * q3;
+        final float q1q2 = 2 * q1 * q2;
+        final float q3q0 = 2 * q3 * q0;
+        final float q1q3 = 2 * q1 * q3;
+        final float q2q0 = 2 * q2 * q0;
+        final float q2q3 = 2 * q2 * q3;
+        final float q1q0 = 2 * q1 * q0;
+
+        float[] r = mRotationMatrix;
+        r[0] = 1 - sqQ2 - sqQ3;
+        r[1] = q1q2 - q3q0;
+        r[2] = q1q3 + q2q0;
+        r[3] = q1q2 + q3q0;
+        r[4] = 1 - sqQ1 - sqQ3;
+        r[5] = q2q3 - q1q0;
+        r[6] = q1q3 - q2q0;
+        r[7] = q2q3 + q1q0;
+        r[8] = 1 - sqQ1 - sqQ2;
+    }
+
+    static boolean remapCoordinateSystem(float[] inR, int axisX, int axisY, float[] outR) {
+        if ((axisX & 0x7C) != 0 || (axisY & 0x7C) != 0) return false;
+        if ((axisX & 0x3) == 0 || (axisY & 0x3) == 0) return false;
+        if ((axisX & 0x3) == (axisY & 0x3)) return false;
+
+        // The z axis is the cross product of x and y.
+        int axisZ = axisX ^ axisY;
+        final int x = (axisX & 0x3) - 1;
+        final int y = (axisY & 0x3) - 1;
+        final int z = (axisZ & 0x3) - 1;
+        final int nextY = (z + 1) % 3;
+        final int nextZ = (z + 2) % 3;
+        if (((x ^ nextY) | (y ^ nextZ)) != 0) axisZ ^= 0x80;
+
+        final boolean sx = axisX >= 0x80;
+        final boolean sy = axisY >= 0x80;
+        final boolean sz = axisZ >= 0x80;
+        for (int j = 0; j < 3; j++) {
+            final int offset = j * 3;
+            for (int i = 0; i < 3; i++) {
+                if (x == i) outR[offset + i] = sx ? -inR[offset] : inR[offset];
+                if (y == i) outR[offset + i] = sy ? -inR[offset + 1] : inR[offset + 1];
+                if (z == i) outR[offset + i] = sz ? -inR[offset + 2] : inR[offset + 2];
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.util.Log;
+
+import ca.rmen.nounours.android.common.Constants;
+import ca.rmen.nounours.android.handheld.compat.SensorCompat;
+
+/**
+ * Registers for the sensors needed in the current state.
+ * <ul>
+ * <li>Nothing while the shake animation is displayed: we ignore shakes then.</li>
+ * <li>The accelerometer only, to detect shakes, while another animation is displayed, while
+ * Nounours is idle, or if the theme has no orientation images.  A shake interrupts an
+ * animation, but a tilt doesn't.</li>
+ * <li>Otherwise, the accelerometer and an orientation sensor.  A rotation vector sensor is used
+ * when the device has one: it is sampled at the rate at which the orientation rules are
+ * evaluated, and the events are batched by the sensor hub.  Otherwise, the orientation is
+ * computed from the accelerometer and magnetic field, or from the accelerometer only, with a
+ * default magnetic field, on devices without a magnetic field sensor: only the pitch and roll
+ * are meaningful then.</li>
+ * </ul>
+ * The accelerometer is sampled at the UI rate, or at the normal rate while Nounours is idle.
+ * The registrations are updated whenever the state changes.
+ * <p/>
+ * The events are delivered on the thread of the given handler.
+ */
+class SensorRegistration {
+    private static final String TAG = Constants.TAG + SensorRegistration.class.getSimpleName();
+
+    static final int ORIENTATION_PERIOD_US = 500000;
+    // The nominal period of SENSOR_DELAY_UI, at which the accelerometer is registered while
+    // Nounours is active.  Shakes are about 4 Hz: this samples them well.
+    static final int ACCELEROMETER_PERIOD_US = 60000;
+    // The nominal period of SENSOR_DELAY_NORMAL, at which the accelerometer is registered while
+    // Nounours is idle.  The ShakeDetector widens its window at this rate, but fast shakes alias:
+    // they are detected less reliably, and a bit later.
+    static final int ACCELEROMETER_IDLE_PERIOD_US = 200000;
+    private static final int ORIENTATION_MAX_REPORT_LATENCY_US = 500000;
+
+    private final SensorManager mSensorManager;
+    private final SensorEventListener mListener;
+    private final Handler mHandler;
+    private final Sensor mAccelerometerSensor;
+    private final Sensor mMagneticFieldSensor;
+
+    // The state.
+    private boolean mIsRegistered;
+    private boolean mIsAnimationRunning;
+    private boolean mIsShaking;
+    private boolean mIsIdle;
+    // Until the theme is read, assume it needs everything.
+    private boolean mHasOrientationRules = true;
+    private boolean mNeedsYaw = true;
+
+    // The current registrations.
+    private boolean mIsAccelerometerRegistered;
+    private int mAccelerometerRate;
+    private boolean mIsOrientationRegistered;
+    // Null if the orientation is computed from the accelerometer only.
+    private Sensor mOrientationSensor;
+    private boolean mOrientationNeedsYaw;
+
+    SensorRegistration(SensorManager sensorManager, SensorEventListener listener, Handler handler) {
+        mSensorManager = sensorManager;
+        mListener = listener;
+        mHandler = handler;
+        if (sensorManager != null) {
+            mAccelerometerSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            mMagneticFieldSensor = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        } else {
+            mAccelerometerSensor = null;
+            mMagneticFieldSensor = null;
+        }
+    }
+
+    synchronized void register() {
+        mIsRegistered = true;
+        updateRegistrations();
+    }
+
+    synchronized void unregister() {
+        mIsRegistered = false;
+        updateRegistrations();
+    }
+
+    /**
+     * Select the orientation sensor for the orientation rules of a new theme.
+     */
+    synchronized void setOrientationNeeds(boolean hasOrientationRules, boolean needsYaw) {
+        mHasOrientationRules = hasOrientationRules;
+        mNeedsYaw = needsYaw;
+        updateRegistrations();
+    }
+
+    synchronized void setNounoursState(boolean isAnimationRunning, boolean isShaking, boolean isIdle) {
+        mIsAnimationRunning = isAnimationRunning;
+        mIsShaking = isShaking;
+        mIsIdle = isIdle;
+        updateRegistrations();
+    }
+
+    /**
+     * @return true if the orientation must be computed from the accelerometer, and the magnetic
+     * field if the device has one.
+     */
+    synchronized boolean usesAccelerometerOrientation() {
+        return mIsOrientationRegistered && (mOrientationSensor == null || mOrientationSensor == mMagneticFieldSensor);
+    }
+
+    private void updateRegistrations() {
+        if (mSensorManager == null) return;
+        boolean needsAccelerometer = mIsRegistered && !(mIsAnimationRunning && mIsShaking) && mAccelerometerSensor != null;
+        boolean needsOrientation = needsAccelerometer && !mIsAnimationRunning && !mIsIdle && mHasOrientationRules;
+
+        if (mIsOrientationRegistered && (!needsOrientation || mOrientationNeedsYaw != mNeedsYaw)) {
+            if (mOrientationSensor != null) mSensorManager.unregisterListener(mListener, mOrientationSensor);
+            mOrientationSensor = null;
+            mIsOrientationRegistered = false;
+        }
+        int accelerometerRate = mIsIdle ? SensorManager.SENSOR_DELAY_NORMAL : SensorManager.SENSOR_DELAY_UI;
+        if (mIsAccelerometerRegistered && (!needsAccelerometer || mAccelerometerRate != accelerometerRate)) {
+            mSensorManager.unregisterListener(mListener, mAccelerometerSensor);
+            mIsAccelerometerRegistered = false;
+        }
+        if (needsAccelerometer && !mIsAccelerometerRegistered) {
+            Log.v(TAG, "Accelerometer registered, idle: " + mIsIdle);
+            mSensorManager.registerListener(mListener, mAccelerometerSensor, accelerometerRate, mHandler);
+            mIsAccelerometerRegistered = true;
+            mAccelerometerRate = accelerometerRate;
+        }
+        if (needsOrientation && !mIsOrientationRegistered) registerOrientationSensor();
+    }
+
+    private void registerOrientationSensor() {
+        Sensor rotationVectorSensor = SensorCompat.getRotationVectorSensor(mSensorManager, mNeedsYaw);
+        if (rotationVectorSensor != null
+                && SensorCompat.registerListener(mSensorManager, mListener, rotationVectorSensor,
+                ORIENTATION_PERIOD_US, ORIENTATION_MAX_REPORT_LATENCY_US, mHandler)) {
+            Log.v(TAG, "Using " + rotationVectorSensor.getName() + " for the orientation");
+            mOrientationSensor = rotationVectorSensor;
+        } else if (mMagneticFieldSensor != null) {
+            Log.v(TAG, "Using the accelerometer and magnetic field for the orientation");
+            mSensorManager.registerListener(mListener, mMagneticFieldSensor, SensorManager.SENSOR_DELAY_NORMAL, mHandler);
+            mOrientationSensor = mMagneticFieldSensor;
+        } else {
+            Log.v(TAG, "Using the accelerometer only for the orientation");
+        }
+        mIsOrientationRegistered = true;
+        mOrientationNeedsYaw = mNeedsYaw;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import ca.rmen.nounours.android.common.Constants;
+
+/**
+ * The thread on which the sensor events are delivered and processed, shared by all the
+ * {@link SensorListener}s of the process.  It runs at background priority, so that it doesn't
+ * compete with the handling of input on the main thread.
+ */
+final class SensorThread {
+    private static final String TAG = Constants.TAG + SensorThread.class.getSimpleName();
+
+    private static Handler sHandler;
+
+    private SensorThread() {
+        // prevent instantiation
+    }
+
+    static synchronized Handler getHandler() {
+        if (sHandler == null) {
+            HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sHandler = new Handler(thread.getLooper());
+        }
+        return sHandler;
+    }
+}
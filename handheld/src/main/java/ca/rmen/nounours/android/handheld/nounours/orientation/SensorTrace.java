@@ -0,0 +1,144 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The binary format of a sensor trace: the sensor events received by a {@link SensorListener},
+ * to be replayed offline.
+ * <pre>
+ * int magic, int version,
+ * events: (byte sensorType, byte displayRotation, byte valueCount, long timestamp, valueCount * float value)
+ * </pre>
+ * All the values are big-endian.  The timestamps are those of the sensor events, in nanoseconds.
+ */
+final class SensorTrace {
+    static final String FILENAME_EXTENSION = ".trace";
+    private static final int MAGIC = 0x4e535452;
+    private static final int VERSION = 1;
+    private static final int MAX_VALUE_COUNT = 6;
+
+    private SensorTrace() {
+        // prevent instantiation
+    }
+
+    static class Writer implements Closeable {
+        private final DataOutputStream mOutputStream;
+
+        Writer(OutputStream outputStream) throws IOException {
+            mOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+            mOutputStream.writeInt(MAGIC);
+            mOutputStream.writeInt(VERSION);
+        }
+
+        void write(int sensorType, int displayRotation, long timestamp, float[] values) throws IOException {
+            int valueCount = Math.min(values.length, MAX_VALUE_COUNT);
+            mOutputStream.writeByte(sensorType);
+            mOutputStream.writeByte(displayRotation);
+            mOutputStream.writeByte(valueCount);
+            mOutputStream.writeLong(timestamp);
+            for (int i = 0; i < valueCount; i++) mOutputStream.writeFloat(values[i]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOutputStream.close();
+        }
+    }
+
+    /**
+     * Reads the events one by one.  The values of the current event are in a reused buffer.
+     */
+    static class Reader implements Closeable {
+        private final DataInputStream mInputStream;
+        private final float[] mValues = new float[MAX_VALUE_COUNT];
+        private int mSensorType;
+        private int mDisplayRotation;
+        private int mValueCount;
+        private long mTimestamp;
+
+        Reader(InputStream inputStream) throws IOException {
+            mInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+            if (mInputStream.readInt() != MAGIC) throw new IOException("Not a sensor trace");
+            int version = mInputStream.readInt();
+            if (version != VERSION) throw new IOException("Unsupported sensor trace version " + version);
+        }
+
+        /**
+         * @return false if there are no more events.
+         */
+        boolean next() throws IOException {
+            int sensorType = mInputStream.read();
+            if (sensorType < 0) return false;
+            try {
+                mSensorType = sensorType;
+                mDisplayRotation = mInputStream.readByte();
+                mValueCount = mInputStream.readByte();
+                if (mValueCount < 0 || mValueCount > MAX_VALUE_COUNT) {
+                    throw new IOException("Corrupt sensor trace: " + mValueCount + " values");
+                }
+                mTimestamp = mInputStream.readLong();
+                for (int i = 0; i < mValueCount; i++) mValues[i] = mInputStream.readFloat();
+            } catch (EOFException e) {
+                // The recording was interrupted in the middle of an event.
+                return false;
+            }
+            return true;
+        }
+
+        int getSensorType() {
+            return mSensorType;
+        }
+
+        int getDisplayRotation() {
+            return mDisplayRotation;
+        }
+
+        long getTimestamp() {
+            return mTimestamp;
+        }
+
+        int getValueCount() {
+            return mValueCount;
+        }
+
+        /**
+         * @return the values of the current event, in a buffer which is reused for the next event.
+         * Only the first {@link #getValueCount()} values are valid.
+         */
+        float[] getValues() {
+            return mValues;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mInputStream.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import ca.rmen.nounours.android.common.Constants;
+
+/**
+ * Records the sensor events received while the sensors are registered into a {@link SensorTrace}
+ * file, in the app's files directory.
+ * <p/>
+ * Recording is disabled by default.  To enable it:
+ * <pre>adb shell setprop log.tag.Nounours/SensorTrace VERBOSE</pre>
+ * and restart the app.  The traces can be replayed on the JVM by the SensorTraceReplayer test.
+ * <p/>
+ * All the methods must be called on the {@link SensorThread}.
+ */
+class SensorTraceRecorder {
+    private static final String TAG = Constants.TAG + "SensorTrace";
+
+    private static final boolean sIsEnabled = Log.isLoggable(TAG, Log.VERBOSE);
+
+    private final Context mContext;
+    private SensorTrace.Writer mWriter;
+
+    SensorTraceRecorder(Context context) {
+        mContext = context;
+    }
+
+    static boolean isEnabled() {
+        return sIsEnabled;
+    }
+
+    void start() {
+        if (mWriter != null) return;
+        File file = new File(mContext.getFilesDir(), "sensors-" + System.currentTimeMillis() + SensorTrace.FILENAME_EXTENSION);
+        try {
+            mWriter = new SensorTrace.Writer(new FileOutputStream(file));
+            Log.v(TAG, "Recording sensor events to " + file);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't create " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    void record(int sensorType, int displayRotation, long timestamp, float[] values) {
+        if (mWriter == null) return;
+        try {
+            mWriter.write(sensorType, displayRotation, timestamp, values);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't record the sensor event: " + e.getMessage(), e);
+            stop();
+        }
+    }
+
+    void stop() {
+        if (mWriter == null) return;
+        try {
+            mWriter.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't close the sensor trace: " + e.getMessage(), e);
+        }
+        mWriter = null;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *   Copyright (c) 2018 Carmen Alvarez
+ *
+ *   This file is part of Nounours for Android.
+ *
+ *   Nounours for Android is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nounours for Android is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nounours for Android.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+/**
+ * Detects shakes from the accelerometer readings, the same way at any sampling rate.
+ * <p/>
+ * Gravity is removed with a high-pass filter, and the energy of the remaining linear
+ * acceleration is integrated over a sliding window, using the timestamps of the events.  The
+ * window is longer at slow rates, so that it always holds a few readings.  A shake
+ * is detected when the root mean square of the linear acceleration over the window exceeds a
+ * threshold.  Another shake can only be detected after a refractory period, and once the device
+ * has calmed down: shaking the device for a while is one shake.
+ * <p/>
+ * All the times are the timestamps of the sensor events, in nanoseconds.  This doesn't allocate
+ * any memory.
+ */
+class ShakeDetector {
+    // The time constant of the high-pass filter.  Slow tilts don't produce linear acceleration.
+    private static final long GRAVITY_TIME_CONSTANT_NS = 100000000L;
+    // The window spans at least MIN_WINDOW_BUCKETS buckets and MIN_WINDOW_READINGS readings, so
+    // that shakes are detected the same way at the slower rate used while Nounours is idle.
+    private static final long BUCKET_NS = 50000000L;
+    private static final int MIN_WINDOW_BUCKETS = 10;
+    private static final int MIN_WINDOW_READINGS = 5;
+    private static final int BUCKET_COUNT = 20;
+    private static final long REFRACTORY_PERIOD_NS = 1000000000L;
+    // Readings further apart than this, because the accelerometer was unregistered, are a new start.
+    private static final long MAX_READING_INTERVAL_NS = 1000000000L;
+    // The min shake speed of the themes was the change of acceleration between two readings.  A
+    // sinusoidal shake of amplitude A changes the acceleration by up to 2A, with an RMS of A/sqrt(2).
+    private static final float SHAKE_SPEED_TO_RMS = 0.35f;
+    // The device has calmed down when the energy is below this ratio of the threshold.
+    private static final float REARM_ENERGY_RATIO = 0.25f;
+
+    private final float[] mGravity = new float[3];
+    // The sum of the squared linear acceleration multiplied by the reading interval, in seconds, per bucket.
+    private final float[] mBuckets = new float[BUCKET_COUNT];
+    private long mLastBucket;
+    private long mLastTimestamp;
+    private long mWindowStartTimestamp;
+    private boolean mHasReading;
+    private boolean mIsArmed = true;
+    private long mLastShakeTimestamp = -REFRACTORY_PERIOD_NS;
+
+    /**
+     * Forget the previous readings.  The refractory period isn't reset: an ongoing shake which
+     * was ignored isn't detected again.
+     */
+    void reset() {
+        mHasReading = false;
+    }
+
+    /**
+     * @param minShakeSpeed the min shake speed of the theme.
+     * @return true if this reading completes a shake.
+     */
+    boolean onAcceleration(long timestamp, float[] values, float minShakeSpeed) {
+        final float x = values[0];
+        final float y = values[1];
+        final float z = values[2];
+        // For some reason, the first reading when the app starts may be 0, which isn't possible.
+        if (x == 0 && y == 0 && z == 0) return false;
+
+        final long interval = timestamp - mLastTimestamp;
+        if (!mHasReading || interval <= 0 || interval > MAX_READING_INTERVAL_NS) {
+            start(timestamp, x, y, z);
+            return false;
+        }
+        mLastTimestamp = timestamp;
+
+        // High-pass filter: the low-pass filtered acceleration is gravity.  At slow rates, the
+        // time constant is at least the reading interval, or the filter would remove the shake.
+        final long gravityTimeConstant = Math.max(GRAVITY_TIME_CONSTANT_NS, interval);
+        final float k = (float) interval / (gravityTimeConstant + interval);
+        mGravity[0] += k * (x - mGravity[0]);
+        mGravity[1] += k * (y - mGravity[1]);
+        mGravity[2] += k * (z - mGravity[2]);
+        final float lx = x - mGravity[0];
+        final float ly = y - mGravity[1];
+        final float lz = z - mGravity[2];
+
+        advanceWindow(timestamp);
+        mBuckets[(int) (mLastBucket % BUCKET_COUNT)] += (lx * lx + ly * ly + lz * lz) * interval / 1e9f;
+        final int windowBuckets = (int) Math.min(BUCKET_COUNT,
+                Math.max(MIN_WINDOW_BUCKETS, (MIN_WINDOW_READINGS * interval + BUCKET_NS - 1) / BUCKET_NS));
+        final long windowNs = windowBuckets * BUCKET_NS;
+        float energy = 0;
+        int bucket = (int) (mLastBucket % BUCKET_COUNT);
+        for (int i = 0; i < windowBuckets; i++) {
+            energy += mBuckets[bucket];
+            bucket = bucket == 0 ? BUCKET_COUNT - 1 : bucket - 1;
+        }
+        energy = energy * 1e9f / windowNs;
+
+        final float rmsThreshold = minShakeSpeed * SHAKE_SPEED_TO_RMS;
+        final float threshold = rmsThreshold * rmsThreshold;
+        if (!mIsArmed) {
+            if (energy < threshold * REARM_ENERGY_RATIO && timestamp - mWindowStartTimestamp >= windowNs) {
+                mIsArmed = true;
+            }
+            return false;
+        }
+        if (energy < threshold || timestamp - mLastShakeTimestamp < REFRACTORY_PERIOD_NS) return false;
+        mIsArmed = false;
+        mLastShakeTimestamp = timestamp;
+        return true;
+    }
+
+    private void start(long timestamp, float x, float y, float z) {
+        mGravity[0] = x;
+        mGravity[1] = y;
+        mGravity[2] = z;
+        for (int i = 0; i < BUCKET_COUNT; i++) mBuckets[i] = 0;
+        mLastBucket = timestamp / BUCKET_NS;
+        mLastTimestamp = timestamp;
+        mWindowStartTimestamp = timestamp;
+        mHasReading = true;
+    }
+
+    /**
+     * Clear the buckets which left the window since the last reading.
+     */
+    private void advanceWindow(long timestamp) {
+        final long bucket = timestamp / BUCKET_NS;
+        final long clearCount = Math.min(bucket - mLastBucket, BUCKET_COUNT);
+        for (long i = 1; i <= clearCount; i++) mBuckets[(int) ((mLastBucket + i) % BUCKET_COUNT)] = 0;
+        mLastBucket = bucket;
+    }
+}
@@ -31,16 +31,20 @@ import android.widget.ImageView;
 
 import com.external.nbadal.AnimatedGifEncoder;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
 
 import ca.rmen.nounours.android.common.Constants;
 import ca.rmen.nounours.data.Animation;
 import ca.rmen.nounours.data.AnimationImage;
+import ca.rmen.nounours.data.Image;
 import ca.rmen.nounours.android.common.nounours.cache.ImageCache;
 import ca.rmen.nounours.android.common.settings.NounoursSettings;
 import ca.rmen.nounours.android.handheld.settings.SharedPreferenceSettings;
@@ -48,62 +52,98 @@ import ca.rmen.nounours.android.handheld.settings.SharedPreferenceSettings;
 public class AnimationUtil {
     private static final String TAG = Constants.TAG + AnimationUtil.class.getSimpleName();
     private static final String EXPORT_FOLDER_PATH = "export";
+    private static final String GIF_FILENAME = "nounours-animation.gif";
+    private static final int GIF_BUFFER_SIZE = 64 * 1024;
 
     /**
      * Save an animation as an animated gif.
+     * <p/>
+     * The gif is encoded straight to a temporary file, through a buffered file channel, which
+     * is renamed once it's complete: the memory used doesn't depend on the length of the animation.
+     * All the frames share a single palette, trained once from a sample of each distinct image,
+     * and each distinct image is rendered and encoded once.  The rendered images are kept
+     * between the two passes: RGB_565 copies, smaller than the images in the image cache.
      *
      * @return a file containing the animated gif render of the given animation.
      */
     public static File saveAnimation(Context context, Animation animation) {
         Log.v(TAG, "saveAnimation " + animation);
         if (!FileUtil.isSdPresent()) return null;
+        File file = getExportFile(context, GIF_FILENAME);
+        if (file == null) return null;
+        File tempFile = new File(file.getParentFile(), GIF_FILENAME + ".tmp");
+        Log.v(TAG, "Saving file " + file);
         ImageCache imageCache = new ImageCache();
+        // The distinct images, rendered for the palette, until they're encoded.
+        Map<Image, Bitmap> renderedFrames = new HashMap<>();
+        OutputStream os = null;
         try {
 
             //http://stackoverflow.com/questions/16331437/how-to-create-an-animated-gif-from-jpegs-in-android-development
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            FileChannel channel = new FileOutputStream(tempFile).getChannel();
+            os = new BufferedOutputStream(Channels.newOutputStream(channel), GIF_BUFFER_SIZE);
             AnimatedGifEncoder encoder = new AnimatedGifEncoder();
-            encoder.start(bos);
+            encoder.start(os);
             encoder.setRepeat(0);
             NounoursSettings settings = SharedPreferenceSettings.getAppSettings(context);
             int backgroundColor = settings.getBackgroundColor();
 
             Paint paint = new Paint();
-            // Go through the list of images in the nounours animation, "repeat"
-            // times.
-            for (int i = 0; i < animation.getRepeat(); i++) {
-                for (final AnimationImage animationImage : animation.getImages()) {
-                    Bitmap bitmap = imageCache.getDrawableImage(context, animationImage.getImage());
-                    if (bitmap == null) {
-                        Log.w(TAG, "Couldn't create a bitmap to save the animation.  Probably out of memory");
-                        return null;
-                    }
-                    Bitmap bitmapTemp = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.RGB_565);
-                    Canvas canvas = new Canvas(bitmapTemp);
-                    canvas.drawColor(backgroundColor);
-                    canvas.drawBitmap(bitmap, 0, 0, paint);
-                    int frameDuration = (int) (animation.getInterval() * animationImage.getDuration());
-                    encoder.setDelay(frameDuration);
-                    encoder.addFrame(bitmapTemp);
-                    bitmapTemp.recycle();
-                }
+            // The images of an animation come from the same theme, with the same colors:
+            // train the palette once, from all of them.
+            for (AnimationImage animationImage : animation.getImages()) {
+                if (renderedFrames.containsKey(animationImage.getImage())) continue;
+                Bitmap bitmapTemp = renderFrame(context, imageCache, animationImage.getImage(), backgroundColor, paint);
+                if (bitmapTemp == null) return null;
+                renderedFrames.put(animationImage.getImage(), bitmapTemp);
+                encoder.addPaletteSample(bitmapTemp);
+            }
+            encoder.buildGlobalPalette();
+
+            // The gif loops forever: a single cycle of the nounours animation
+            // looks the same as "repeat" cycles.
+            for (final AnimationImage animationImage : animation.getImages()) {
+                int frameDuration = (int) (animation.getInterval() * animationImage.getDuration());
+                encoder.setDelay(frameDuration);
+                // The background is the same for all the frames: the image identifies the frame.
+                if (encoder.addCachedFrame(animationImage.getImage())) continue;
+                Bitmap bitmapTemp = renderedFrames.remove(animationImage.getImage());
+                boolean added = encoder.addFrame(bitmapTemp, animationImage.getImage());
+                bitmapTemp.recycle();
+                if (!added) throw new IOException("Couldn't write a frame to " + tempFile);
             }
             Log.v(TAG, "saveAnimation: finish writing gif...");
-            encoder.finish();
-            File file = getExportFile(context, "nounours-animation.gif");
-            Log.v(TAG, "Saving file " + file);
-            if (file == null) return null;
-            FileOutputStream fos = new FileOutputStream(file);
-            InputStream is = new ByteArrayInputStream(bos.toByteArray());
-            FileUtil.copy(is, fos);
+            if (!encoder.finish()) throw new IOException("Couldn't finish writing " + tempFile);
+            os.close();
+            os = null;
+            if (!tempFile.renameTo(file)) throw new IOException("Couldn't rename " + tempFile + " to " + file);
             Log.v(TAG, "Saved file " + file);
             return file;
         } catch (IOException | OutOfMemoryError e) {
             Log.w(TAG, "Couldn't write animated gif: " + e.getMessage(), e);
             return null;
         } finally {
+            for (Bitmap bitmap : renderedFrames.values()) bitmap.recycle();
             imageCache.clearImageCache();
+            FileUtil.closeSilently(os);
+            if (tempFile.exists() && !tempFile.delete()) Log.v(TAG, "Couldn't delete " + tempFile);
+        }
+    }
+
+    /**
+     * @return a copy of the image, drawn over the background color, or null if we're out of memory.
+     */
+    private static Bitmap renderFrame(Context context, ImageCache imageCache, Image image, int backgroundColor, Paint paint) {
+        Bitmap bitmap = imageCache.getDrawableImage(context, image);
+        if (bitmap == null) {
+            Log.w(TAG, "Couldn't create a bitmap to save the animation.  Probably out of memory");
+            return null;
         }
+        Bitmap bitmapTemp = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(bitmapTemp);
+        canvas.drawColor(backgroundColor);
+        canvas.drawBitmap(bitmap, 0, 0, paint);
+        return bitmapTemp;
     }
 
     /**
@@ -21,9 +21,8 @@ package ca.rmen.nounours.android.handheld.util;
 
 import android.os.Environment;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 
 public class FileUtil {
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
@@ -33,17 +32,12 @@ public class FileUtil {
                 || externalStorageState.equals(Environment.MEDIA_MOUNTED_READ_ONLY);
     }
 
-    public static void copy(final InputStream in, final OutputStream out) throws IOException {
+    public static void closeSilently(Closeable closeable) {
+        if (closeable == null) return;
         try {
-            final byte[] buffer = new byte[1500];
-            int read;
-            while ((read = in.read(buffer)) != -1) {
-                out.write(buffer, 0, read);
-                out.flush();
-            }
-        } finally {
-            in.close();
-            out.close();
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing more we can do.
         }
     }
 }
@@ -10,8 +10,11 @@ import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 @SuppressWarnings({"CanBeFinal", "UnusedReturnValue", "unused", "JavaDoc", "JavadocReference", "PointlessBitwiseExpression"})
 public class AnimatedGifEncoder {
@@ -60,6 +63,16 @@ public class AnimatedGifEncoder {
 
 	  protected int sample = 10; // default sample interval for quantizer
 
+	  protected static final int maxPaletteSamplePixels = 16384; // per frame, for the global palette
+
+	  protected byte[] paletteSample; // BGR pixels sampled from all the frames
+
+	  protected int paletteSampleLength;
+
+	  protected NeuQuant globalQuant; // quantizer of the global palette, or null
+
+	  protected Map<Object, byte[]> frameCache = new HashMap<Object, byte[]>(); // encoded pixel data, by frame key
+
 	  /**
 	   * Sets the delay time between each frame, or changes it for subsequent frames
 	   * (applies to last frame added).
@@ -126,6 +139,22 @@ public class AnimatedGifEncoder {
 	   * @return true if successful.
 	   */
 	  public boolean addFrame(Bitmap im) {
+	    return addFrame(im, null);
+	  }
+
+	  /**
+	   * Adds next GIF frame, like <code>addFrame(Bitmap)</code>. With a global
+	   * palette, the encoded pixel data of the frame is also kept under the given
+	   * key, so that the same frame can be added again with
+	   * <code>addCachedFrame()</code>, without encoding it again.
+	   * 
+	   * @param im
+	   *          Bitmap containing frame to write.
+	   * @param key
+	   *          identifies the content of the frame, or null.
+	   * @return true if successful.
+	   */
+	  public boolean addFrame(Bitmap im, Object key) {
 	    if ((im == null) || !started) {
 	      return false;
 	    }
@@ -137,7 +166,11 @@ public class AnimatedGifEncoder {
 	      }
 	      image = im;
 	      getImagePixels(); // convert to correct format if necessary
-	      analyzePixels(); // build color table & map pixels
+	      if (globalQuant != null) {
+	        mapPixels(globalQuant); // map pixels to the global color table
+	      } else {
+	        analyzePixels(); // build color table & map pixels
+	      }
 	      if (firstFrame) {
 	        writeLSD(); // logical screen descriptior
 	        writePalette(); // global color table
@@ -148,10 +181,18 @@ public class AnimatedGifEncoder {
 	      }
 	      writeGraphicCtrlExt(); // write graphic control extension
 	      writeImageDesc(); // image descriptor
-	      if (!firstFrame) {
+	      if (!firstFrame && globalQuant == null) {
 	        writePalette(); // local color table
 	      }
-	      writePixels(); // encode and write pixel data
+	      if (key != null && globalQuant != null) {
+	        ByteArrayOutputStream encodedPixels = new ByteArrayOutputStream();
+	        new LZWEncoder(width, height, indexedPixels, colorDepth).encode(encodedPixels);
+	        byte[] data = encodedPixels.toByteArray();
+	        frameCache.put(key, data);
+	        out.write(data, 0, data.length);
+	      } else {
+	        writePixels(); // encode and write pixel data
+	      }
 	      firstFrame = false;
 	    } catch (IOException e) {
 	      ok = false;
@@ -181,6 +222,10 @@ public class AnimatedGifEncoder {
 
 	    // reset for subsequent use
 	    transIndex = 0;
+	    globalQuant = null;
+	    paletteSample = null;
+	    paletteSampleLength = 0;
+	    frameCache.clear();
 	    out = null;
 	    image = null;
 	    pixels = null;
@@ -192,6 +237,80 @@ public class AnimatedGifEncoder {
 	    return ok;
 	  }
 
+	  /**
+	   * Adds again a frame previously added with <code>addFrame(Bitmap, Object)</code>,
+	   * with the current delay, reusing its encoded pixel data.
+	   * 
+	   * @param key
+	   *          the key the frame was added with.
+	   * @return false if the frame isn't cached: it must be added with
+	   *         <code>addFrame(Bitmap, Object)</code>.
+	   */
+	  public boolean addCachedFrame(Object key) {
+	    if (!started || firstFrame || globalQuant == null) {
+	      return false;
+	    }
+	    byte[] data = frameCache.get(key);
+	    if (data == null) {
+	      return false;
+	    }
+	    try {
+	      writeGraphicCtrlExt(); // write graphic control extension
+	      writeImageDesc(); // image descriptor
+	      out.write(data, 0, data.length);
+	    } catch (IOException e) {
+	      return false;
+	    }
+	    return true;
+	  }
+
+	  /**
+	   * Adds a sample of the pixels of a frame to the global palette. Call it for
+	   * each distinct frame of the animation, then <code>buildGlobalPalette()</code>,
+	   * before adding the first frame.
+	   * 
+	   * @param im
+	   *          Bitmap containing a frame of the animation.
+	   */
+	  public void addPaletteSample(Bitmap im) {
+	    int[] data = getImageData(im);
+	    int step = Math.max(1, data.length / maxPaletteSamplePixels);
+	    int count = (data.length + step - 1) / step;
+	    if (paletteSample == null) {
+	      paletteSample = new byte[count * 3];
+	    } else if (paletteSample.length < paletteSampleLength + count * 3) {
+	      byte[] newSample = new byte[Math.max(paletteSample.length * 2, paletteSampleLength + count * 3)];
+	      System.arraycopy(paletteSample, 0, newSample, 0, paletteSampleLength);
+	      paletteSample = newSample;
+	    }
+	    for (int i = 0; i < data.length; i += step) {
+	      int td = data[i];
+	      paletteSample[paletteSampleLength++] = (byte) ((td >> 0) & 0xFF);
+	      paletteSample[paletteSampleLength++] = (byte) ((td >> 8) & 0xFF);
+	      paletteSample[paletteSampleLength++] = (byte) ((td >> 16) & 0xFF);
+	    }
+	  }
+
+	  /**
+	   * Trains a single palette from the samples given to
+	   * <code>addPaletteSample()</code>. It's written as the global color table, and
+	   * every frame is mapped to it, without a local color table.
+	   * 
+	   * @return false if no sample was added.
+	   */
+	  public boolean buildGlobalPalette() {
+	    if (paletteSampleLength == 0)
+	      return false;
+	    globalQuant = new NeuQuant(paletteSample, paletteSampleLength, sample);
+	    colorTab = toRGB(globalQuant.process());
+	    paletteSample = null;
+	    paletteSampleLength = 0;
+	    for (int i = 0; i < usedEntry.length; i++) {
+	      usedEntry[i] = false;
+	    }
+	    return true;
+	  }
+
 	  /**
 	   * Sets frame rate in frames per second. Equivalent to
 	   * <code>setDelay(1000/fps)</code>.
@@ -282,19 +401,23 @@ public class AnimatedGifEncoder {
 	   */
 	  protected void analyzePixels() {
 	    int len = pixels.length;
-	    int nPix = len / 3;
-	    indexedPixels = new byte[nPix];
 	    NeuQuant nq = new NeuQuant(pixels, len, sample);
 	    // initialize quantizer
-	    colorTab = nq.process(); // create reduced palette
-	    // convert map from BGR to RGB
-	    for (int i = 0; i < colorTab.length; i += 3) {
-	      byte temp = colorTab[i];
-	      colorTab[i] = colorTab[i + 2];
-	      colorTab[i + 2] = temp;
-	      usedEntry[i / 3] = false;
+	    colorTab = toRGB(nq.process()); // create reduced palette
+	    for (int i = 0; i < usedEntry.length; i++) {
+	      usedEntry[i] = false;
+	    }
+	    mapPixels(nq);
+	  }
+
+	  /**
+	   * Maps the image pixels to the palette of the given quantizer.
+	   */
+	  protected void mapPixels(NeuQuant nq) {
+	    int nPix = pixels.length / 3;
+	    if (indexedPixels == null || indexedPixels.length != nPix) {
+	      indexedPixels = new byte[nPix];
 	    }
-	    // map image pixels to new palette
 	    int k = 0;
 	    for (int i = 0; i < nPix; i++) {
 	      int index = nq.map(pixels[k++] & 0xff, pixels[k++] & 0xff, pixels[k++] & 0xff);
@@ -310,6 +433,18 @@ public class AnimatedGifEncoder {
 	    }
 	  }
 
+	  /**
+	   * Converts a color map from BGR to RGB.
+	   */
+	  protected static byte[] toRGB(byte[] map) {
+	    for (int i = 0; i < map.length; i += 3) {
+	      byte temp = map[i];
+	      map[i] = map[i + 2];
+	      map[i + 2] = temp;
+	    }
+	    return map;
+	  }
+
 	  /**
 	   * Returns index of palette color closest to c
 	   * 
@@ -411,8 +546,8 @@ public class AnimatedGifEncoder {
 	    writeShort(width); // image size
 	    writeShort(height);
 	    // packed fields
-	    if (firstFrame) {
-	      // no LCT - GCT is used for first (or only) frame
+	    if (firstFrame || globalQuant != null) {
+	      // no LCT - GCT is used for first (or only) frame, or for all the frames
 	      out.write(0);
 	    } else {
 	      // specify normal LCT
@@ -0,0 +1,100 @@
+package ca.rmen.nounours.android.handheld.nounours;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.os.Vibrator;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowVibrator;
+
+import java.util.Collections;
+
+import ca.rmen.nounours.BuildConfig;
+import ca.rmen.nounours.data.Animation;
+import ca.rmen.nounours.data.Image;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 18)
+public class VibrateHandlerTest {
+
+    @Test
+    public void testPulsePerFrame() {
+        Animation animation = new Animation("shake", "Shake", 100, 2, true, true, null);
+        animation.addImage(new Image("left", "left.png"), 1);
+        animation.addImage(new Image("right", "right.png"), 0.5f);
+        long[] pattern = VibrateHandler.compilePattern(animation, 30);
+        Assert.assertArrayEquals(new long[]{0, 30, 70, 30, 20, 30, 70, 30, 20}, pattern);
+    }
+
+    @Test
+    public void testFramesShorterThanPulse() {
+        Animation animation = new Animation("shake", "Shake", 20, 1, true, true, null);
+        animation.addImage(new Image("left", "left.png"), 1);
+        animation.addImage(new Image("right", "right.png"), 2);
+        Assert.assertArrayEquals(new long[]{0, 20, 0, 30, 10}, VibrateHandler.compilePattern(animation, 30));
+        // Without an interval, the vibration lasts the whole animation.
+        Assert.assertArrayEquals(new long[]{0, 20, 0, 40, 0}, VibrateHandler.compilePattern(animation, 0));
+    }
+
+    /**
+     * The library's vibration of an animation is only ignored while the waveform of the
+     * animation handler plays.
+     */
+    @Test
+    public void testLibraryVibration() {
+        VibrateHandler vibrateHandler = new VibrateHandler(RuntimeEnvironment.application);
+        ShadowVibrator shadowVibrator = getShadowVibrator();
+        vibrateHandler.compileWaveforms(Collections.singletonList(createShakeAnimation()), 30);
+        long[] waveform = {0, 30, 70, 30, 70};
+
+        // An animation without a compiled waveform.
+        vibrateHandler.doVibrate(300, 100);
+        Assert.assertArrayEquals(new long[]{100, 100, 100}, shadowVibrator.getPattern());
+
+        vibrateHandler.startWaveform("shake");
+        Assert.assertArrayEquals(waveform, shadowVibrator.getPattern());
+        vibrateHandler.doVibrate(200, 100);
+        Assert.assertArrayEquals(waveform, shadowVibrator.getPattern());
+
+        // The waveform is over.
+        SystemClock.sleep(300);
+        vibrateHandler.doVibrate(200, 100);
+        Assert.assertArrayEquals(new long[]{100, 100}, shadowVibrator.getPattern());
+    }
+
+    /**
+     * Stopping an animation doesn't cancel another vibration.
+     */
+    @Test
+    public void testCancelWaveform() {
+        VibrateHandler vibrateHandler = new VibrateHandler(RuntimeEnvironment.application);
+        ShadowVibrator shadowVibrator = getShadowVibrator();
+        vibrateHandler.compileWaveforms(Collections.singletonList(createShakeAnimation()), 30);
+
+        vibrateHandler.doVibrate(500);
+        vibrateHandler.cancelWaveform();
+        Assert.assertFalse(shadowVibrator.isCancelled());
+
+        vibrateHandler.startWaveform("shake");
+        vibrateHandler.cancelWaveform();
+        Assert.assertTrue(shadowVibrator.isCancelled());
+    }
+
+    private static Animation createShakeAnimation() {
+        Animation animation = new Animation("shake", "Shake", 100, 1, true, true, null);
+        animation.addImage(new Image("left", "left.png"), 1);
+        animation.addImage(new Image("right", "right.png"), 1);
+        return animation;
+    }
+
+    private static ShadowVibrator getShadowVibrator() {
+        Vibrator vibrator = (Vibrator) RuntimeEnvironment.application.getSystemService(Context.VIBRATOR_SERVICE);
+        return Shadows.shadowOf(vibrator);
+    }
+}
@@ -0,0 +1,91 @@
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+import ca.rmen.nounours.data.Image;
+
+public class OrientationTableTest {
+
+    private static final int RULE_COUNT = 40;
+    private static final int QUERY_COUNT = 100000;
+
+    @Test
+    public void testEmpty() {
+        Assert.assertTrue(OrientationTable.EMPTY.isEmpty());
+        Assert.assertNull(OrientationTable.EMPTY.getImage(0, 0, 0));
+    }
+
+    @Test
+    public void testFirstMatchWins() {
+        Image first = new Image("first", "first.png");
+        Image second = new Image("second", "second.png");
+        OrientationTable table = new OrientationTable(null, new Image[]{first, second}, new float[]{
+                -180, 180, -90, 0, -180, 180,
+                -180, 180, -45, 45, -180, 180});
+        Assert.assertFalse(table.needsYaw());
+        Assert.assertSame(first, table.getImage(0, -30, 0));
+        Assert.assertSame(first, table.getImage(0, 0, 0));
+        Assert.assertSame(second, table.getImage(0, 30, 0));
+        Assert.assertNull(table.getImage(0, 60, 0));
+    }
+
+    @Test
+    public void testBounds() {
+        Image image = new Image("image", "image.png");
+        OrientationTable table = new OrientationTable(null, new Image[]{image}, new float[]{
+                0, 90, -90, -80, 170, 180});
+        Assert.assertTrue(table.needsYaw());
+        Assert.assertSame(image, table.getImage(0, -90, 180));
+        Assert.assertSame(image, table.getImage(90, -80, 170));
+        Assert.assertNull(table.getImage(-1, -85, 175));
+        Assert.assertNull(table.getImage(45, -79.9f, 175));
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random(42);
+        Image[] images = new Image[RULE_COUNT];
+        float[] bounds = new float[RULE_COUNT * 6];
+        for (int i = 0; i < RULE_COUNT; i++) {
+            images[i] = new Image("image" + i, "image" + i + ".png");
+            setRange(random, bounds, i * 6, 180);
+            setRange(random, bounds, i * 6 + 2, 90);
+            setRange(random, bounds, i * 6 + 4, 180);
+        }
+        OrientationTable table = new OrientationTable(null, images, bounds);
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            float yaw = random.nextFloat() * 360 - 180;
+            float pitch = random.nextFloat() * 180 - 90;
+            float roll = random.nextFloat() * 360 - 180;
+            Assert.assertSame("Wrong image for " + yaw + ", " + pitch + ", " + roll,
+                    scan(images, bounds, yaw, pitch, roll), table.getImage(yaw, pitch, roll));
+        }
+    }
+
+    private static void setRange(Random random, float[] bounds, int offset, int limit) {
+        // Most rules don't constrain the yaw.
+        if (offset % 6 == 0 && random.nextInt(4) > 0) {
+            bounds[offset] = -180;
+            bounds[offset + 1] = 180;
+            return;
+        }
+        float a = random.nextInt(2 * limit + 1) - limit;
+        float b = random.nextInt(2 * limit + 1) - limit;
+        bounds[offset] = Math.min(a, b);
+        bounds[offset + 1] = Math.max(a, b);
+    }
+
+    private static Image scan(Image[] images, float[] bounds, float yaw, float pitch, float roll) {
+        for (int i = 0; i < images.length; i++) {
+            if (yaw >= bounds[i * 6] && yaw <= bounds[i * 6 + 1]
+                    && pitch >= bounds[i * 6 + 2] && pitch <= bounds[i * 6 + 3]
+                    && roll >= bounds[i * 6 + 4] && roll <= bounds[i * 6 + 5]) {
+                return images[i];
+            }
+        }
+        return null;
+    }
+}
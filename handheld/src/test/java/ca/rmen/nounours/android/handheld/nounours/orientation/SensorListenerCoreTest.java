@@ -0,0 +1,147 @@
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.hardware.Sensor;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import ca.rmen.nounours.data.Image;
+
+public class SensorListenerCoreTest {
+
+    private static final int ITERATIONS = 20000;
+    // 50 Hz
+    private static final long EVENT_INTERVAL_NS = 20000000L;
+
+    /**
+     * The sensor events are handled for as long as nounours is visible: the whole path from the
+     * sensor event to the callback must not produce garbage.
+     */
+    @Test
+    public void testNoAllocation() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+        allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        CountingCallback callback = new CountingCallback();
+        SensorListenerCore core = new SensorListenerCore(callback);
+        core.setOrientationTable(new OrientationTable(null,
+                new Image[]{new Image("tiltLeft", "tiltLeft.png"), new Image("tiltRight", "tiltRight.png")},
+                new float[]{
+                        -180, 180, -90, 90, -180, -20,
+                        -180, 180, -90, 90, 20, 180}));
+        core.setUsesAccelerometerOrientation(true);
+        float[] acceleration = new float[3];
+        float[] magneticField = new float[3];
+        float[] rotationVector = new float[4];
+        // Warm up, so that class loading and compilation aren't counted.
+        long timestamp = sendEvents(core, 0, acceleration, magneticField, rotationVector);
+
+        long overhead = allocationMXBean.getThreadAllocatedBytes(threadId);
+        overhead = allocationMXBean.getThreadAllocatedBytes(threadId) - overhead;
+        long before = allocationMXBean.getThreadAllocatedBytes(threadId);
+        sendEvents(core, timestamp, acceleration, magneticField, rotationVector);
+        long allocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        // The events went through the shake and tilt logic.
+        Assert.assertTrue(callback.shakeCount > 0);
+        Assert.assertTrue(callback.tiltImageCount > 0);
+        Assert.assertTrue(callback.tiltImageClearedCount > 0);
+        Assert.assertEquals("Bytes allocated while handling sensor events", 0, allocated);
+    }
+
+    /**
+     * On a device without a magnetic field sensor, the pitch and roll are computed from the
+     * accelerometer only.
+     */
+    @Test
+    public void testAccelerometerOnlyTilt() {
+        CountingCallback callback = new CountingCallback();
+        SensorListenerCore core = new SensorListenerCore(callback);
+        core.setOrientationTable(new OrientationTable(null,
+                new Image[]{new Image("tiltLeft", "tiltLeft.png"), new Image("tiltRight", "tiltRight.png")},
+                new float[]{
+                        -180, 180, -90, 90, -180, -20,
+                        -180, 180, -90, 90, 20, 180}));
+        core.setUsesAccelerometerOrientation(true);
+        float[] acceleration = new float[3];
+        long timestamp = 0;
+        for (int i = 0; i < 1000; i++) {
+            double roll = Math.toRadians(Math.abs((i % 100) - 50) * 2.4 - 60);
+            acceleration[0] = (float) (-9.81 * Math.sin(roll));
+            acceleration[1] = 0;
+            acceleration[2] = (float) (9.81 * Math.cos(roll));
+            core.onSensorChanged(Sensor.TYPE_ACCELEROMETER, timestamp, acceleration);
+            timestamp += EVENT_INTERVAL_NS;
+        }
+        Assert.assertTrue(callback.tiltImageCount > 0);
+    }
+
+    /**
+     * Send accelerometer and magnetic field events, then rotation vector events. The device is
+     * tilted from one side to the other, and shaken now and then.
+     *
+     * @return the timestamp of the next event.
+     */
+    private static long sendEvents(SensorListenerCore core, long timestamp, float[] acceleration,
+                                   float[] magneticField, float[] rotationVector) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            // Roll from -60 to 60 degrees and back, every 100 events.
+            double roll = Math.toRadians(Math.abs((i % 100) - 50) * 2.4 - 60);
+            boolean isShaking = i % 500 < 10;
+            acceleration[0] = (float) (-9.81 * Math.sin(roll)) + (isShaking ? (i % 2 == 0 ? 30 : -30) : 0);
+            acceleration[1] = 0;
+            acceleration[2] = (float) (9.81 * Math.cos(roll));
+            magneticField[0] = 0;
+            magneticField[1] = 20;
+            magneticField[2] = -40;
+            if (i < ITERATIONS / 2) {
+                core.onSensorChanged(Sensor.TYPE_ACCELEROMETER, timestamp, acceleration);
+                core.onSensorChanged(Sensor.TYPE_MAGNETIC_FIELD, timestamp, magneticField);
+            } else {
+                core.onSensorChanged(Sensor.TYPE_ACCELEROMETER, timestamp, acceleration);
+                // A rotation around the y axis.
+                rotationVector[0] = 0;
+                rotationVector[1] = (float) Math.sin(roll / 2);
+                rotationVector[2] = 0;
+                rotationVector[3] = (float) Math.cos(roll / 2);
+                core.onSensorChanged(Sensor.TYPE_ROTATION_VECTOR, timestamp, rotationVector);
+            }
+            timestamp += EVENT_INTERVAL_NS;
+        }
+        return timestamp;
+    }
+
+    private static class CountingCallback implements SensorListenerCore.Callback {
+        int shakeCount;
+        int tiltImageCount;
+        int tiltImageClearedCount;
+
+        @Override
+        public float getMinShakeSpeed() {
+            return 8;
+        }
+
+        @Override
+        public void onShake() {
+            shakeCount++;
+        }
+
+        @Override
+        public void onTiltImage(Image image) {
+            tiltImageCount++;
+        }
+
+        @Override
+        public void onTiltImageCleared() {
+            tiltImageClearedCount++;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.hardware.SensorManager;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+public class SensorProcessorTest {
+
+    private static final float EPSILON = 0.01f;
+    private static final int ITERATIONS = 20000;
+
+    @Test
+    public void testFlat() {
+        SensorProcessor processor = new SensorProcessor();
+        processor.setAcceleration(new float[]{0, 0, 9.81f});
+        processor.setMagneticField(new float[]{0, 20, -40});
+        Assert.assertTrue(processor.computeOrientation(SensorManager.AXIS_X, SensorManager.AXIS_Y));
+        Assert.assertEquals(0, processor.getYaw(), EPSILON);
+        Assert.assertEquals(0, processor.getPitch(), EPSILON);
+        Assert.assertEquals(0, processor.getRoll(), EPSILON);
+    }
+
+    @Test
+    public void testUpright() {
+        SensorProcessor processor = new SensorProcessor();
+        processor.setAcceleration(new float[]{0, 9.81f, 0});
+        processor.setMagneticField(new float[]{0, 20, -40});
+        Assert.assertTrue(processor.computeOrientation(SensorManager.AXIS_X, SensorManager.AXIS_Y));
+        Assert.assertEquals(-90, processor.getPitch(), EPSILON);
+        Assert.assertEquals(0, processor.getRoll(), EPSILON);
+    }
+
+    @Test
+    public void testNoAcceleration() {
+        SensorProcessor processor = new SensorProcessor();
+        Assert.assertFalse(processor.computeOrientation(SensorManager.AXIS_X, SensorManager.AXIS_Y));
+        processor.setAcceleration(new float[]{0, 0, 0});
+        Assert.assertFalse(processor.computeOrientation(SensorManager.AXIS_X, SensorManager.AXIS_Y));
+    }
+
+    @Test
+    public void testRotationVector() {
+        SensorProcessor processor = new SensorProcessor();
+        // Flat, without the scalar component.
+        processor.setRotationVector(new float[]{0, 0, 0});
+        Assert.assertTrue(processor.computeOrientation(SensorManager.AXIS_X, SensorManager.AXIS_Y));
+        Assert.assertEquals(0, processor.getPitch(), EPSILON);
+        Assert.assertEquals(0, processor.getRoll(), EPSILON);
+        // Rotated 60 degrees around the x axis.
+        processor.setRotationVector(new float[]{(float) Math.sin(Math.PI / 6), 0, 0, (float) Math.cos(Math.PI / 6)});
+        Assert.assertTrue(processor.computeOrientation(SensorManager.AXIS_X, SensorManager.AXIS_Y));
+        Assert.assertEquals(-60, processor.getPitch(), EPSILON);
+        // The rotation vector takes precedence over the accelerometer until it's cleared.
+        processor.setAcceleration(new float[]{0, 0, 9.81f});
+        processor.setMagneticField(new float[]{0, 20, -40});
+        Assert.assertTrue(processor.computeOrientation(SensorManager.AXIS_X, SensorManager.AXIS_Y));
+        Assert.assertEquals(-60, processor.getPitch(), EPSILON);
+        processor.clearRotationVector();
+        Assert.assertTrue(processor.computeOrientation(SensorManager.AXIS_X, SensorManager.AXIS_Y));
+        Assert.assertEquals(0, processor.getPitch(), EPSILON);
+    }
+
+    @Test
+    public void testRemapCoordinateSystem() {
+        float[] identity = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+        float[] result = new float[9];
+        Assert.assertTrue(SensorProcessor.remapCoordinateSystem(identity, SensorManager.AXIS_X, SensorManager.AXIS_Y, result));
+        assertMatrixEquals(identity, result);
+        Assert.assertTrue(SensorProcessor.remapCoordinateSystem(identity, SensorManager.AXIS_Y, SensorManager.AXIS_MINUS_X, result));
+        assertMatrixEquals(new float[]{0, 1, 0, -1, 0, 0, 0, 0, 1}, result);
+        Assert.assertTrue(SensorProcessor.remapCoordinateSystem(identity, SensorManager.AXIS_MINUS_X, SensorManager.AXIS_MINUS_Y, result));
+        assertMatrixEquals(new float[]{-1, 0, 0, 0, -1, 0, 0, 0, 1}, result);
+        Assert.assertFalse(SensorProcessor.remapCoordinateSystem(identity, SensorManager.AXIS_X, SensorManager.AXIS_MINUS_X, result));
+    }
+
+    /**
+     * The sensor events are handled for as long as nounours is visible: this must not produce garbage.
+     */
+    @Test
+    public void testNoAllocation() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+        allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        SensorProcessor processor = new SensorProcessor();
+        float[] acceleration = new float[3];
+        float[] magneticField = new float[3];
+        // Warm up, so that class loading and compilation aren't counted.
+        processEvents(processor, acceleration, magneticField);
+
+        long overhead = allocationMXBean.getThreadAllocatedBytes(threadId);
+        overhead = allocationMXBean.getThreadAllocatedBytes(threadId) - overhead;
+        long before = allocationMXBean.getThreadAllocatedBytes(threadId);
+        float checksum = processEvents(processor, acceleration, magneticField);
+        long allocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        Assert.assertFalse(Float.isNaN(checksum));
+        Assert.assertEquals("Bytes allocated while processing sensor events", 0, allocated);
+    }
+
+    private static float processEvents(SensorProcessor processor, float[] acceleration, float[] magneticField) {
+        float checksum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            acceleration[0] = (i % 7) - 3;
+            acceleration[1] = (i % 11) - 5;
+            acceleration[2] = 9.81f;
+            processor.setAcceleration(acceleration);
+            magneticField[0] = (i % 5) - 2;
+            magneticField[1] = 20;
+            magneticField[2] = -40;
+            processor.setMagneticField(magneticField);
+            if (processor.computeOrientation(SensorManager.AXIS_Y, SensorManager.AXIS_MINUS_X)) {
+                checksum += processor.getYaw() + processor.getPitch() + processor.getRoll();
+            }
+        }
+        return checksum;
+    }
+
+    private static void assertMatrixEquals(float[] expected, float[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("Element " + i, expected[i], actual[i], EPSILON);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadow.api.Shadow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.rmen.nounours.BuildConfig;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 18, shadows = SensorRegistrationTest.RecordingSensorManager.class)
+public class SensorRegistrationTest {
+
+    private SensorManager mSensorManager;
+    private RecordingSensorManager mRecordingSensorManager;
+    private final SensorEventListener mListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mSensorManager = (SensorManager) RuntimeEnvironment.application.getSystemService(Context.SENSOR_SERVICE);
+        mRecordingSensorManager = Shadow.extract(mSensorManager);
+    }
+
+    /**
+     * The sensor events must be processed on the sensor thread, never on the main looper.
+     */
+    @Test
+    public void testEventsAreDeliveredOffTheMainLooper() {
+        SensorRegistration sensorRegistration = new SensorRegistration(mSensorManager, mListener, SensorThread.getHandler());
+        sensorRegistration.register();
+        Assert.assertEquals(2, mRecordingSensorManager.mHandlers.size());
+        for (Handler handler : mRecordingSensorManager.mHandlers.values()) {
+            Assert.assertNotNull(handler);
+            Assert.assertNotSame(Looper.getMainLooper(), handler.getLooper());
+            Assert.assertNotSame(Looper.getMainLooper().getThread(), handler.getLooper().getThread());
+        }
+        sensorRegistration.unregister();
+        Assert.assertTrue(mRecordingSensorManager.mHandlers.isEmpty());
+    }
+
+    @Test
+    public void testSensorsFollowTheState() {
+        SensorRegistration sensorRegistration = new SensorRegistration(mSensorManager, mListener, SensorThread.getHandler());
+        sensorRegistration.register();
+        Assert.assertTrue(mRecordingSensorManager.isRegistered(Sensor.TYPE_ACCELEROMETER));
+        Assert.assertTrue(mRecordingSensorManager.isRegistered(Sensor.TYPE_MAGNETIC_FIELD));
+
+        // The shake animation.
+        sensorRegistration.setNounoursState(true, true, false);
+        Assert.assertTrue(mRecordingSensorManager.mHandlers.isEmpty());
+
+        // Another animation can still be interrupted by a shake.
+        sensorRegistration.setNounoursState(true, false, false);
+        Assert.assertTrue(mRecordingSensorManager.isRegistered(Sensor.TYPE_ACCELEROMETER));
+        Assert.assertFalse(mRecordingSensorManager.isRegistered(Sensor.TYPE_MAGNETIC_FIELD));
+
+        sensorRegistration.setNounoursState(false, false, true);
+        Assert.assertTrue(mRecordingSensorManager.isRegistered(Sensor.TYPE_ACCELEROMETER));
+        Assert.assertFalse(mRecordingSensorManager.isRegistered(Sensor.TYPE_MAGNETIC_FIELD));
+
+        sensorRegistration.setNounoursState(false, false, false);
+        Assert.assertTrue(mRecordingSensorManager.isRegistered(Sensor.TYPE_MAGNETIC_FIELD));
+        sensorRegistration.setOrientationNeeds(false, false);
+        Assert.assertTrue(mRecordingSensorManager.isRegistered(Sensor.TYPE_ACCELEROMETER));
+        Assert.assertFalse(mRecordingSensorManager.isRegistered(Sensor.TYPE_MAGNETIC_FIELD));
+
+        sensorRegistration.unregister();
+        Assert.assertTrue(mRecordingSensorManager.mHandlers.isEmpty());
+    }
+
+    @Test
+    public void testAccelerometerRateFollowsIdle() {
+        SensorRegistration sensorRegistration = new SensorRegistration(mSensorManager, mListener, SensorThread.getHandler());
+        sensorRegistration.register();
+        Assert.assertEquals(SensorManager.SENSOR_DELAY_UI, mRecordingSensorManager.getRate(Sensor.TYPE_ACCELEROMETER));
+
+        sensorRegistration.setNounoursState(false, false, true);
+        Assert.assertEquals(SensorManager.SENSOR_DELAY_NORMAL, mRecordingSensorManager.getRate(Sensor.TYPE_ACCELEROMETER));
+
+        // An animation wakes Nounours up.
+        sensorRegistration.setNounoursState(true, false, false);
+        Assert.assertEquals(SensorManager.SENSOR_DELAY_UI, mRecordingSensorManager.getRate(Sensor.TYPE_ACCELEROMETER));
+
+        sensorRegistration.unregister();
+        Assert.assertTrue(mRecordingSensorManager.mHandlers.isEmpty());
+    }
+
+    /**
+     * Without a rotation vector or magnetic field sensor, the orientation is computed from
+     * the accelerometer only.
+     */
+    @Test
+    public void testNoMagneticFieldSensor() {
+        mRecordingSensorManager.mHasMagneticField = false;
+        SensorRegistration sensorRegistration = new SensorRegistration(mSensorManager, mListener, SensorThread.getHandler());
+        sensorRegistration.register();
+        Assert.assertTrue(mRecordingSensorManager.isRegistered(Sensor.TYPE_ACCELEROMETER));
+        Assert.assertEquals(1, mRecordingSensorManager.mHandlers.size());
+        Assert.assertTrue(sensorRegistration.usesAccelerometerOrientation());
+
+        // Idle: the accelerometer is only used for shakes.
+        sensorRegistration.setNounoursState(false, false, true);
+        Assert.assertFalse(sensorRegistration.usesAccelerometerOrientation());
+        sensorRegistration.setNounoursState(false, false, false);
+        Assert.assertTrue(sensorRegistration.usesAccelerometerOrientation());
+        sensorRegistration.setOrientationNeeds(false, false);
+        Assert.assertFalse(sensorRegistration.usesAccelerometerOrientation());
+
+        sensorRegistration.unregister();
+        Assert.assertTrue(mRecordingSensorManager.mHandlers.isEmpty());
+        Assert.assertFalse(sensorRegistration.usesAccelerometerOrientation());
+    }
+
+    /**
+     * A device with an accelerometer and, unless disabled, a magnetic field sensor, which records
+     * the handler of each registration.
+     */
+    @Implements(SensorManager.class)
+    public static class RecordingSensorManager {
+        private final Map<Integer, Sensor> mSensors = new HashMap<>();
+        final Map<Sensor, Handler> mHandlers = new HashMap<>();
+        private final Map<Sensor, Integer> mRates = new HashMap<>();
+        boolean mHasMagneticField = true;
+
+        @Implementation
+        public Sensor getDefaultSensor(int type) {
+            if (type != Sensor.TYPE_ACCELEROMETER && type != Sensor.TYPE_MAGNETIC_FIELD) return null;
+            if (type == Sensor.TYPE_MAGNETIC_FIELD && !mHasMagneticField) return null;
+            Sensor sensor = mSensors.get(type);
+            if (sensor == null) {
+                sensor = Shadow.newInstanceOf(Sensor.class);
+                mSensors.put(type, sensor);
+            }
+            return sensor;
+        }
+
+        @Implementation
+        public boolean registerListener(SensorEventListener listener, Sensor sensor, int rate, Handler handler) {
+            mHandlers.put(sensor, handler);
+            mRates.put(sensor, rate);
+            return true;
+        }
+
+        @Implementation
+        public void unregisterListener(SensorEventListener listener, Sensor sensor) {
+            mHandlers.remove(sensor);
+            mRates.remove(sensor);
+        }
+
+        @Implementation
+        public void unregisterListener(SensorEventListener listener) {
+            mHandlers.clear();
+            mRates.clear();
+        }
+
+        boolean isRegistered(int type) {
+            return mHandlers.containsKey(mSensors.get(type));
+        }
+
+        int getRate(int type) {
+            return mRates.get(mSensors.get(type));
+        }
+    }
+}
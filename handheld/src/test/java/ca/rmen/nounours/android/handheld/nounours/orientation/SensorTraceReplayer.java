@@ -0,0 +1,155 @@
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.hardware.Sensor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.rmen.nounours.data.Image;
+
+/**
+ * Feeds a {@link SensorTrace} to a {@link SensorListenerCore}, on the JVM, and reports what it did:
+ * the shakes, the tilt image decisions, and the time spent handling each event.
+ * <p/>
+ * The tilt image is re-evaluated periodically: only the changes of tilt image are reported.
+ */
+class SensorTraceReplayer implements SensorListenerCore.Callback {
+
+    static class Decision {
+        final long timestamp;
+        // Null if the tilt image was cleared.
+        final String imageId;
+
+        Decision(long timestamp, String imageId) {
+            this.timestamp = timestamp;
+            this.imageId = imageId;
+        }
+
+        @Override
+        public String toString() {
+            return timestamp / 1000000 + " ms: " + (imageId == null ? "cleared" : imageId);
+        }
+    }
+
+    static class Report {
+        int eventCount;
+        int shakeCount;
+        final List<Decision> decisions = new ArrayList<>();
+        long totalNs;
+        long maxNs;
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format("%d events, %d shakes, %d tilt decisions, avg %d ns/event, max %d ns/event",
+                    eventCount, shakeCount, decisions.size(), eventCount == 0 ? 0 : totalNs / eventCount, maxNs));
+            for (Decision decision : decisions) builder.append("\n  ").append(decision);
+            return builder.toString();
+        }
+    }
+
+    private final SensorListenerCore mCore = new SensorListenerCore(this);
+    private final float mMinShakeSpeed;
+    // The values of each event, copied in an array of the exact size, like the SensorEvent values.
+    private final float[][] mValues = new float[7][];
+    private Report mReport;
+    private long mTimestamp;
+
+    SensorTraceReplayer(OrientationTable orientationTable, float minShakeSpeed) {
+        mCore.setOrientationTable(orientationTable);
+        mMinShakeSpeed = minShakeSpeed;
+        for (int i = 0; i < mValues.length; i++) mValues[i] = new float[i];
+    }
+
+    /**
+     * @param speed 1 to replay the events at the rate they were recorded, 2 for twice as fast,
+     *              or 0 to replay them as fast as possible.
+     */
+    Report replay(InputStream inputStream, float speed) throws IOException, InterruptedException {
+        mReport = new Report();
+        SensorTrace.Reader reader = new SensorTrace.Reader(inputStream);
+        try {
+            long firstTimestamp = 0;
+            long startTime = System.nanoTime();
+            while (reader.next()) {
+                mTimestamp = reader.getTimestamp();
+                if (mReport.eventCount == 0) firstTimestamp = mTimestamp;
+                if (speed > 0) {
+                    long delayNs = (long) ((mTimestamp - firstTimestamp) / speed) - (System.nanoTime() - startTime);
+                    if (delayNs > 0) Thread.sleep(delayNs / 1000000, (int) (delayNs % 1000000));
+                }
+                int sensorType = reader.getSensorType();
+                // The magnetic field is only registered when the orientation is computed from it.
+                if (sensorType == Sensor.TYPE_MAGNETIC_FIELD) mCore.setUsesAccelerometerOrientation(true);
+                mCore.setDisplayRotation(reader.getDisplayRotation());
+                float[] values = mValues[reader.getValueCount()];
+                System.arraycopy(reader.getValues(), 0, values, 0, values.length);
+
+                long before = System.nanoTime();
+                mCore.onSensorChanged(sensorType, mTimestamp, values);
+                long duration = System.nanoTime() - before;
+                mReport.eventCount++;
+                mReport.totalNs += duration;
+                if (duration > mReport.maxNs) mReport.maxNs = duration;
+            }
+        } finally {
+            reader.close();
+        }
+        return mReport;
+    }
+
+    /**
+     * @return the tilt image rules of the given orientationimage2.csv file of a theme.
+     */
+    static OrientationTable readOrientationTable(File file) throws IOException {
+        List<Image> images = new ArrayList<>();
+        List<float[]> rules = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            // Skip the header.
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split(",");
+                if (fields.length < 7) continue;
+                images.add(new Image(fields[0], fields[0] + ".png"));
+                float[] rule = new float[6];
+                for (int i = 0; i < 6; i++) rule[i] = Float.parseFloat(fields[i + 1]);
+                rules.add(rule);
+            }
+        } finally {
+            reader.close();
+        }
+        float[] bounds = new float[rules.size() * 6];
+        for (int i = 0; i < rules.size(); i++) System.arraycopy(rules.get(i), 0, bounds, i * 6, 6);
+        return new OrientationTable(null, images.toArray(new Image[images.size()]), bounds);
+    }
+
+    @Override
+    public float getMinShakeSpeed() {
+        return mMinShakeSpeed;
+    }
+
+    @Override
+    public void onShake() {
+        mReport.shakeCount++;
+        // Like Nounours, which ignores the sensors while the shake animation is running.
+        mCore.resetShake();
+    }
+
+    @Override
+    public void onTiltImage(Image image) {
+        int decisionCount = mReport.decisions.size();
+        if (decisionCount > 0 && image.getId().equals(mReport.decisions.get(decisionCount - 1).imageId)) return;
+        mReport.decisions.add(new Decision(mTimestamp, image.getId()));
+    }
+
+    @Override
+    public void onTiltImageCleared() {
+        mReport.decisions.add(new Decision(mTimestamp, null));
+    }
+}
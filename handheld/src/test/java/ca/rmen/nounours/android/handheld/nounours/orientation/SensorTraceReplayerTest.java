@@ -0,0 +1,104 @@
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import android.hardware.Sensor;
+import android.view.Surface;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class SensorTraceReplayerTest {
+
+    private static final String ORIENTATION_FILE = "src/nounours/assets/themes/5000/orientationimage2.csv";
+    private static final float DEFAULT_SHAKE_FACTOR = 8;
+    private static final float GRAVITY = 9.81f;
+    private static final long EVENT_INTERVAL_NS = 20000000L;
+    private static final float[] MAGNETIC_FIELD = {0, 20, -40};
+
+    private OrientationTable mOrientationTable;
+    private long mTimestamp;
+
+    @Before
+    public void setUp() throws IOException {
+        mOrientationTable = SensorTraceReplayer.readOrientationTable(new File(ORIENTATION_FILE));
+    }
+
+    @Test
+    public void testSyntheticTrace() throws IOException, InterruptedException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SensorTrace.Writer writer = new SensorTrace.Writer(outputStream);
+        // Flat, then slowly tilted head up, back to flat, and shaken.
+        writeTilt(writer, 0, 0, 2000);
+        writeTilt(writer, 0, 60, 1000);
+        writeTilt(writer, 60, 60, 2000);
+        writeTilt(writer, 60, 0, 1000);
+        writeTilt(writer, 0, 0, 2000);
+        writeShake(writer, 500);
+        writer.close();
+
+        SensorTraceReplayer replayer = new SensorTraceReplayer(mOrientationTable, DEFAULT_SHAKE_FACTOR);
+        SensorTraceReplayer.Report report = replayer.replay(new ByteArrayInputStream(outputStream.toByteArray()), 0);
+        System.out.println(report);
+
+        Assert.assertEquals(2 * (8500 / 20), report.eventCount);
+        Assert.assertEquals(2, report.decisions.size());
+        SensorTraceReplayer.Decision headUp = report.decisions.get(0);
+        Assert.assertEquals("HeadUp", headUp.imageId);
+        Assert.assertTrue(headUp.timestamp > 2000000000L && headUp.timestamp <= 3500000000L);
+        SensorTraceReplayer.Decision cleared = report.decisions.get(1);
+        Assert.assertNull(cleared.imageId);
+        Assert.assertTrue(cleared.timestamp > 5000000000L && cleared.timestamp <= 6500000000L);
+        Assert.assertTrue(report.shakeCount >= 1);
+        Assert.assertTrue(report.maxNs >= report.totalNs / report.eventCount);
+    }
+
+    /**
+     * Replays a trace recorded on a device by the SensorTraceRecorder:
+     * <pre>./gradlew :handheld:testFullDebugUnitTest -DsensorTrace=/path/to/file.trace [-DsensorTraceSpeed=1] [-DsensorTraceShakeFactor=8]</pre>
+     */
+    @Test
+    public void testRecordedTrace() throws IOException, InterruptedException {
+        String path = System.getProperty("sensorTrace");
+        Assume.assumeNotNull(path);
+        float speed = Float.parseFloat(System.getProperty("sensorTraceSpeed", "0"));
+        float shakeFactor = Float.parseFloat(System.getProperty("sensorTraceShakeFactor", String.valueOf(DEFAULT_SHAKE_FACTOR)));
+        SensorTraceReplayer replayer = new SensorTraceReplayer(mOrientationTable, shakeFactor);
+        SensorTraceReplayer.Report report = replayer.replay(new FileInputStream(path), speed);
+        System.out.println(path + ": " + report);
+    }
+
+    /**
+     * Write accelerometer and magnetic field events, while the pitch goes from one value to another.
+     */
+    private void writeTilt(SensorTrace.Writer writer, float fromPitch, float toPitch, long durationMs) throws IOException {
+        int eventCount = (int) (durationMs * 1000000 / EVENT_INTERVAL_NS);
+        for (int i = 0; i < eventCount; i++) {
+            double pitch = Math.toRadians(fromPitch + (toPitch - fromPitch) * i / eventCount);
+            float[] acceleration = {0, (float) (-GRAVITY * Math.sin(pitch)), (float) (GRAVITY * Math.cos(pitch))};
+            writeEvents(writer, acceleration);
+        }
+    }
+
+    /**
+     * Write accelerometer and magnetic field events of the device shaken up and down, while flat.
+     */
+    private void writeShake(SensorTrace.Writer writer, long durationMs) throws IOException {
+        int eventCount = (int) (durationMs * 1000000 / EVENT_INTERVAL_NS);
+        for (int i = 0; i < eventCount; i++) {
+            writeEvents(writer, new float[]{0, 0, i % 2 == 0 ? 2 : 18});
+        }
+    }
+
+    private void writeEvents(SensorTrace.Writer writer, float[] acceleration) throws IOException {
+        writer.write(Sensor.TYPE_ACCELEROMETER, Surface.ROTATION_0, mTimestamp, acceleration);
+        writer.write(Sensor.TYPE_MAGNETIC_FIELD, Surface.ROTATION_0, mTimestamp, MAGNETIC_FIELD);
+        mTimestamp += EVENT_INTERVAL_NS;
+    }
+}
@@ -0,0 +1,116 @@
+package ca.rmen.nounours.android.handheld.nounours.orientation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShakeDetectorTest {
+
+    private static final float MIN_SHAKE_SPEED = 8;
+    private static final float GRAVITY = 9.81f;
+    // The rates at which the accelerometer is registered while idle and active, and faster rates
+    // a device may deliver.
+    private static final int[] SAMPLING_RATES_HZ = {
+            1000000 / SensorRegistration.ACCELEROMETER_IDLE_PERIOD_US,
+            1000000 / SensorRegistration.ACCELEROMETER_PERIOD_US,
+            50, 100, 200};
+
+    @Test
+    public void testAtRest() {
+        for (int rate : SAMPLING_RATES_HZ) {
+            ShakeDetector detector = new ShakeDetector();
+            Assert.assertEquals("At " + rate + " Hz", 0, rest(detector, 0, 5000, rate));
+        }
+    }
+
+    @Test
+    public void testTilt() {
+        for (int rate : SAMPLING_RATES_HZ) {
+            ShakeDetector detector = new ShakeDetector();
+            // A quarter turn in one second, and back.
+            int shakes = tilt(detector, 0, 1000, rate, 0, 90);
+            shakes += tilt(detector, 1000, 1000, rate, 90, 0);
+            Assert.assertEquals("At " + rate + " Hz", 0, shakes);
+        }
+    }
+
+    @Test
+    public void testOneShakeAtAnyRate() {
+        for (int rate : SAMPLING_RATES_HZ) {
+            ShakeDetector detector = new ShakeDetector();
+            int shakes = rest(detector, 0, 1000, rate);
+            // Shaking for a while is only one shake.
+            shakes += shake(detector, 1000, 3000, rate, 8);
+            shakes += rest(detector, 4000, 1000, rate);
+            Assert.assertEquals("At " + rate + " Hz", 1, shakes);
+        }
+    }
+
+    @Test
+    public void testGentleShake() {
+        for (int rate : SAMPLING_RATES_HZ) {
+            ShakeDetector detector = new ShakeDetector();
+            Assert.assertEquals("At " + rate + " Hz", 0, shake(detector, 0, 2000, rate, 1));
+        }
+    }
+
+    @Test
+    public void testTwoShakes() {
+        for (int rate : SAMPLING_RATES_HZ) {
+            ShakeDetector detector = new ShakeDetector();
+            int shakes = shake(detector, 0, 1000, rate, 8);
+            shakes += rest(detector, 1000, 1000, rate);
+            shakes += shake(detector, 2000, 1000, rate, 8);
+            Assert.assertEquals("At " + rate + " Hz", 2, shakes);
+        }
+    }
+
+    @Test
+    public void testReset() {
+        ShakeDetector detector = new ShakeDetector();
+        Assert.assertEquals(1, shake(detector, 0, 1000, 50, 8));
+        // The shake goes on while its animation is displayed, and after.
+        detector.reset();
+        Assert.assertEquals(0, shake(detector, 3000, 1000, 50, 8));
+        Assert.assertEquals(0, rest(detector, 4000, 1000, 50));
+        Assert.assertEquals(1, shake(detector, 5000, 1000, 50, 8));
+    }
+
+    private static int rest(ShakeDetector detector, long startMs, long durationMs, int rate) {
+        return tilt(detector, startMs, durationMs, rate, 0, 0);
+    }
+
+    private static int tilt(ShakeDetector detector, long startMs, long durationMs, int rate, float fromDegrees, float toDegrees) {
+        int shakes = 0;
+        int count = (int) (durationMs * rate / 1000);
+        float[] values = new float[3];
+        for (int i = 0; i < count; i++) {
+            double angle = Math.toRadians(fromDegrees + (toDegrees - fromDegrees) * i / count);
+            values[0] = 0.1f;
+            values[1] = (float) (GRAVITY * Math.sin(angle));
+            values[2] = (float) (GRAVITY * Math.cos(angle));
+            if (detector.onAcceleration(getTimestamp(startMs, i, rate), values, MIN_SHAKE_SPEED)) shakes++;
+        }
+        return shakes;
+    }
+
+    /**
+     * Shake the flat device from left to right, 4 times per second.
+     */
+    private static int shake(ShakeDetector detector, long startMs, long durationMs, int rate, float amplitude) {
+        int shakes = 0;
+        int count = (int) (durationMs * rate / 1000);
+        float[] values = new float[3];
+        for (int i = 0; i < count; i++) {
+            long timestamp = getTimestamp(startMs, i, rate);
+            values[0] = amplitude * (float) Math.sin(2 * Math.PI * 4 * timestamp / 1e9);
+            values[1] = 0.1f;
+            values[2] = GRAVITY;
+            if (detector.onAcceleration(timestamp, values, MIN_SHAKE_SPEED)) shakes++;
+        }
+        return shakes;
+    }
+
+    private static long getTimestamp(long startMs, int i, int rate) {
+        return startMs * 1000000L + i * 1000000000L / rate;
+    }
+}
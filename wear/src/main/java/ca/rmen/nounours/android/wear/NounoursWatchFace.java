@@ -41,7 +41,6 @@ import ca.rmen.nounours.android.common.nounours.AndroidNounours;
 import ca.rmen.nounours.android.common.nounours.EmptySoundHandler;
 import ca.rmen.nounours.android.common.nounours.EmptyThemeLoadListener;
 import ca.rmen.nounours.android.common.nounours.EmptyVibrateHandler;
-import ca.rmen.nounours.android.common.nounours.cache.ImageCache;
 import ca.rmen.nounours.android.common.nounours.cache.NounoursResourceCache;
 import ca.rmen.nounours.data.Image;
 
@@ -82,7 +81,7 @@ public abstract class NounoursWatchFace extends CanvasWatchFaceService {
 
             mSettings.setBackgroundColor(ResourcesCompat.getColor(getApplicationContext(), R.color.background_color));
             mRenderer = new NounoursWatchFaceRenderer(context, mSettings);
-            mCache = new NounoursResourceCache(context, mSettings, new ImageCache());
+            mCache = new NounoursResourceCache(context, mSettings);
             PreferenceManager.getDefaultSharedPreferences(context).registerOnSharedPreferenceChangeListener(mSharedPrefsListener);
             mNounours = new AndroidNounours("WEAR",
                     getApplicationContext(),
@@ -93,7 +92,8 @@ public abstract class NounoursWatchFace extends CanvasWatchFaceService {
                     mCache,
                     new EmptySoundHandler(),
                     new EmptyVibrateHandler(),
-                    new EmptyThemeLoadListener());
+                    new EmptyThemeLoadListener(),
+                    true);
         }
 
         private void setWatchFaceStyle() {
@@ -123,7 +123,7 @@ public abstract class NounoursWatchFace extends CanvasWatchFaceService {
         @Override
         public void onTapCommand(int tapType, int x, int y, long eventTime) {
             super.onTapCommand(tapType, x, y, eventTime);
-            if (mNounours.isLoading()) return;
+            if (!mNounours.isReady() || mNounours.isLoading()) return;
             if (tapType == WatchFaceService.TAP_TYPE_TAP) {
                 mNounours.doRandomAnimation();
             }
@@ -162,11 +162,13 @@ public abstract class NounoursWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            if (!mNounours.isLoading()) {
+            if (!mNounours.isReady()) {
+                canvas.drawColor(mSettings.getBackgroundColor());
+            } else if (!mNounours.isLoading()) {
                 Image image = mNounours.getCurrentImage();
                 if (image != null) {
                     Bitmap bitmap = mCache.getDrawableImage(getApplicationContext(), image);
-                    mRenderer.render(mSettings, bitmap, canvas, bounds.width(), bounds.height());
+                    if (bitmap != null) mRenderer.render(mSettings, bitmap, canvas, bounds.width(), bounds.height());
                 }
             }
         }